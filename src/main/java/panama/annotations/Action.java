@@ -28,4 +28,8 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Action {
 	String alias() default "";
+	/** If true, no HTTP session is created while executing the action or rendering it's target; an existing session can still be read. */
+	boolean stateless() default false;
+	/** If true, multipart requests are not parsed in advance, the action reads the parts via Context.getMultipartStream() instead. */
+	boolean streamingUpload() default false;
 }
@@ -0,0 +1,40 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches the rendered response of an action invoked by a GET or HEAD request.
+ * Cache hits are served by the Dispatcher without creating the controller, so neither beforeAction() nor afterAction()
+ * is invoked -- do not use this for actions that depend on the user or check authorization.
+ *
+ * Responses that set cookies or have a status other than 200 are not cached.
+ * Use Dispatcher.getResponseCache() to invalidate cached responses.
+ *
+ * @author ridcully
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cached {
+	/** time to live in seconds */
+	int ttl() default 60;
+	/** names of request parameters the response depends on; "locale" stands for the locale of the context */
+	String[] varyBy() default {};
+}
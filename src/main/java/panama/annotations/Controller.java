@@ -30,4 +30,25 @@ public @interface Controller {
 	String alias() default "";
 	String defaultAction() default "";
 	boolean isDefaultController() default false;
+	Scope scope() default Scope.PER_REQUEST;
+
+	/**
+	 * Defines how instances of a controller are created.
+	 */
+	enum Scope {
+		/** A new instance is created for every request (default) */
+		PER_REQUEST,
+		/**
+		 * One instance is created at startup and shared by all requests.
+		 * Such controllers must be stateless and must access the current context via BaseController.getContext() instead of the context field.
+		 */
+		SINGLETON,
+		/**
+		 * Instances are reused from a small per-thread pool. The context field is set for every request
+		 * and BaseController.reset() is invoked before an instance is put back into the pool.
+		 * The pools are never removed from the threads, so idle instances stay reachable from the container's
+		 * threads until these end, also after the application was undeployed.
+		 */
+		POOLED
+	}
 }
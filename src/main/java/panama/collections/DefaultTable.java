@@ -18,19 +18,28 @@ package panama.collections;
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang.StringUtils;
 
 import panama.collections.filters.Filter;
 import panama.core.Context;
+import panama.core.Dispatcher;
+import panama.core.Settings;
 import panama.log.SimpleLogger;
 import panama.util.DynaBeanUtils;
+import panama.util.PropertyAccessor;
 import panama.util.TableController;
 import panama.util.UUIDGenerator;
 
@@ -67,6 +76,9 @@ public class DefaultTable implements Table, Comparator<Object>, Serializable {
 	protected int currentPage = 1;
 	protected int entriesPerPage = 10;
 	protected boolean pagingEnabled = true;	// can be set to false to avoid paging and show all rows
+	protected int parallelThreshold = -1;	// min. number of rows to filter and sort in parallel, -1 for the framework setting
+	protected boolean viewCacheEnabled = false;	// keep filtered and sorted rows across requests, see ListModel.getVersion()
+	private transient volatile View view = null;
 
 	public DefaultTable(String key) {
 		this.key = key;
@@ -129,6 +141,13 @@ public class DefaultTable implements Table, Comparator<Object>, Serializable {
 	@Override
 	public List<? extends Object> getRows() {
 		try {
+			if (model instanceof SharedListModel) {
+				return ((SharedListModel)model).getRows(this);
+			}
+			long version = viewCacheEnabled && model != null ? model.getVersion() : -1;
+			if (version >= 0) {
+				return getViewRows(version);
+			}
 			List<? extends Object> rows = fetchRows();
 			if (rows == null) { return null; }
 			Context ctx = Context.getInstance();
@@ -137,18 +156,14 @@ public class DefaultTable implements Table, Comparator<Object>, Serializable {
 			if (!filters.isEmpty() && (ctx == null || ctx.get(isFiltered) == null)) {
 				rows = applyFilters(rows);
 				if (ctx != null) {
+					ctx.put(cacheCode, rows);
 					ctx.put(isFiltered, Boolean.TRUE);
 				}
 			}
 			if (getSortBy() != null) {
 				/* check if list already sorted in current Request */
 				if (ctx == null || ctx.get(isSorted) == null) {
-					try {
-						sortRows(rows);
-					} catch (Exception e) {
-						log.debug("Error while sorting: "+e.getMessage());
-						/* do not sort */
-					}
+					sortRowsQuietly(rows);
 					if (ctx != null) {
 						ctx.put(isSorted, Boolean.TRUE);
 					}
@@ -162,6 +177,82 @@ public class DefaultTable implements Table, Comparator<Object>, Serializable {
 		}
 	}
 
+	/**
+	 * Gets rows from the cached view, filtering and sorting them only if the view is outdated.
+	 * @param version current version of the model
+	 */
+	private List<? extends Object> getViewRows(long version) {
+		View v = view;
+		if (v != null && v.isValidFor(this, version)) {
+			return v.rows;
+		}
+		List<? extends Object> rows = model.getList();	// not the rows cached in the request, they may be older than the version
+		if (rows == null) { return null; }
+		rows = filterAndSort(rows);
+		view = new View(this, version, rows);
+		return rows;
+	}
+
+	/**
+	 * Filters and sorts rows as specified by this table.
+	 * @param rows not changed by this method
+	 * @return new list of the rows
+	 */
+	List<? extends Object> filterAndSort(List<? extends Object> rows) {
+		List<Object> result = filters.isEmpty() ? new ArrayList<Object>(rows) : applyFilters(rows);
+		if (getSortBy() != null) {
+			sortRowsQuietly(result);
+		}
+		return result;
+	}
+
+	private void sortRowsQuietly(List<? extends Object> rows) {
+		try {
+			sortRows(rows);
+		} catch (Exception e) {
+			log.debug("Error while sorting: "+e.getMessage());
+			/* do not sort */
+		}
+	}
+
+	/**
+	 * Gets snapshot of the states of given filters, see {@link Filter#getState()}.
+	 * @param filters
+	 * @return the states by the names of the filters
+	 */
+	static Map<String, Object> getFilterStates(Map<String, Filter> filters) {
+		Map<String, Object> states = new HashMap<String, Object>();
+		for (Map.Entry<String, Filter> e : filters.entrySet()) {
+			states.put(e.getKey(), e.getValue() != null ? e.getValue().getState() : null);
+		}
+		return states;
+	}
+
+	/** Filtered and sorted rows, with everything they depend on */
+	private static class View {
+		final ListModel model;
+		final long version;
+		final Map<String, Object> filters;
+		final String sortBy;
+		final String sortDirection;
+		final List<? extends Object> rows;
+
+		View(DefaultTable table, long version, List<? extends Object> rows) {
+			this.model = table.model;
+			this.version = version;
+			this.filters = getFilterStates(table.filters);
+			this.sortBy = table.sortBy;
+			this.sortDirection = table.sortDirection;
+			this.rows = rows;
+		}
+
+		/** filters are compared by their state, so changes of the filters of panama.collections.filters are detected */
+		boolean isValidFor(DefaultTable table, long version) {
+			return model == table.model && this.version == version && filters.equals(getFilterStates(table.filters))
+					&& StringUtils.equals(sortBy, table.sortBy) && StringUtils.equals(sortDirection, table.sortDirection);
+		}
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public List<? extends Object> getPageRows() {
@@ -189,30 +280,155 @@ public class DefaultTable implements Table, Comparator<Object>, Serializable {
 
 	/**
 	 * Sorts the specified list.
+	 * The sort key of each row is read (with a compiled {@link PropertyAccessor}) and normalized once,
+	 * then the keys are sorted and the rows put into their order. Numbers of the same type are compared as primitives.
+	 * With at least {@link #getParallelThreshold()} rows, the keys are sorted in parallel.
+	 * Subclasses overriding {@link #compare(Object, Object)} or {@link #getCompareValue(Object)} are sorted with the comparator instead.
 	 * @param rows
 	 */
 	protected void sortRows(List<? extends Object> rows) throws Exception {
 		if (rows == null || rows.size() == 0) {
 			return;
 		}
-		/*
-		 * find a getter method - this is just a speed up,
-		 * under certain circumstances it will be necessary to find another one
-		 * while sorting.
-		 * @see #compare()
-		 */
-		Class clazz = rows.get(0).getClass();
-		try {
-			sortByGetter = clazz.getMethod(getterName);
-		} catch (Exception e) {
+		if (isCustomComparison()) {
 			sortByGetter = null;
+			Collections.sort(rows, this);
+			return;
+		}
+		SortKey[] keys = extractSortKeys(rows);
+		final boolean desc = Table.SORT_DESC.equals(sortDirection);
+		final int kind = keyKind(keys);
+		Comparator<SortKey> comparator = (a, b) -> {
+			if (a.value == null) {
+				return b.value == null ? 0 : (desc ? 1 : -1);
+			}
+			if (b.value == null) {
+				return desc ? -1 : 1;
+			}
+			int c;
+			if (kind == KEY_LONG) {
+				c = Long.compare(a.longValue, b.longValue);
+			} else if (kind == KEY_DOUBLE) {
+				c = Double.compare(a.doubleValue, b.doubleValue);
+			} else {
+				try {
+					c = a.value.compareTo(b.value);
+				} catch (Exception e) {
+					c = 0;	// do not sort if any errors occur
+				}
+			}
+			return desc ? -c : c;
+		};
+		if (isParallel(keys.length)) {
+			Arrays.parallelSort(keys, comparator);	// stable as well
+		} else {
+			Arrays.sort(keys, comparator);
+		}
+		@SuppressWarnings("unchecked")
+		ListIterator<Object> it = (ListIterator<Object>)rows.listIterator();	// only puts back rows of the list
+		for (SortKey key : keys) {
+			it.next();
+			it.set(key.row);
+		}
+	}
+
+	private final static int KEY_OBJECT = 0;
+	private final static int KEY_LONG = 1;
+	private final static int KEY_DOUBLE = 2;
+
+	/** A row with its sort key */
+	private static class SortKey {
+		final Object row;
+		final Comparable value;
+		long longValue;
+		double doubleValue;
+
+		SortKey(Object row, Comparable value) {
+			this.row = row;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * Reads the values to sort by of all rows, like {@link #getCompareValue(Object)} does, but compiling the getter only once per class of rows.
+	 */
+	private SortKey[] extractSortKeys(List<? extends Object> rows) {
+		SortKey[] keys = new SortKey[rows.size()];
+		Class<?> type = null;
+		PropertyAccessor accessor = null;
+		int i = 0;
+		for (Object row : rows) {
+			Comparable v = null;
+			if (row != null) {
+				if (row.getClass() != type) {
+					type = row.getClass();
+					accessor = PropertyAccessor.forProperty(type, getSortBy());
+				}
+				try {
+					Object o = accessor.get(row);
+					v = o instanceof Comparable ? (Comparable)o : null;
+				} catch (Exception e) {
+					v = null;	/* give up */
+				}
+				if (v instanceof String) {
+					v = ((String)v).toLowerCase();
+				}
+			}
+			keys[i++] = new SortKey(row, v);
 		}
-		Collections.sort(rows, this);
+		return keys;
+	}
+
+	/**
+	 * Determines how keys are compared: if all values are integral numbers or all are floating point numbers of the same class,
+	 * their primitive values are stored in the keys and compared directly.
+	 */
+	private int keyKind(SortKey[] keys) {
+		Class<?> type = null;
+		for (SortKey key : keys) {
+			if (key.value != null) {
+				if (type == null) {
+					type = key.value.getClass();
+				} else if (key.value.getClass() != type) {
+					return KEY_OBJECT;
+				}
+			}
+		}
+		int kind;
+		if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+			kind = KEY_LONG;
+		} else if (type == Double.class || type == Float.class) {
+			kind = KEY_DOUBLE;
+		} else {
+			return KEY_OBJECT;
+		}
+		for (SortKey key : keys) {
+			if (key.value != null) {
+				if (kind == KEY_LONG) {
+					key.longValue = ((Number)key.value).longValue();
+				} else {
+					key.doubleValue = ((Number)key.value).doubleValue();
+				}
+			}
+		}
+		return kind;
+	}
+
+	/** whether a subclass customized the comparison of rows */
+	private boolean isCustomComparison() {
+		for (Class<?> c = getClass(); c != DefaultTable.class; c = c.getSuperclass()) {
+			for (Method m : c.getDeclaredMethods()) {
+				if (m.getName().equals("compare") || m.getName().equals("getCompareValue")) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 
 	/**
 	 * Implementation of Comparator interface.
-	 * The compare method for sorting our rows.
+	 * The compare method for sorting our rows, only used by {@link #sortRows(List)} if a subclass overrides it or {@link #getCompareValue(Object)}.
 	 * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
 	 */
 	@Override
@@ -353,6 +569,61 @@ public class DefaultTable implements Table, Comparator<Object>, Serializable {
 		return this;
 	}
 
+	/**
+	 * Gets min. number of rows to filter and sort in parallel.
+	 * @return the threshold set for this table or {@link Dispatcher#PARAM_TABLE_PARALLELTHRESHOLD}; 0 for never
+	 */
+	public int getParallelThreshold() {
+		if (parallelThreshold >= 0) {
+			return parallelThreshold;
+		}
+		Context ctx = Context.getInstance();
+		Settings settings = ctx != null && ctx.getCore() != null ? ctx.getCore().getSettings() : Settings.DEFAULTS;
+		return settings.getTableParallelThreshold();
+	}
+
+	/**
+	 * Sets min. number of rows to filter and sort in parallel.
+	 * Filters of tables with that many rows must be thread safe, they are applied by multiple threads (with the context of the request).
+	 * @param parallelThreshold number of rows, 0 for never, -1 for {@link Dispatcher#PARAM_TABLE_PARALLELTHRESHOLD}
+	 * @return the table
+	 */
+	public Table setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+		return this;
+	}
+
+	/**
+	 * @return whether filtered and sorted rows are kept across requests
+	 */
+	public boolean isViewCacheEnabled() {
+		return viewCacheEnabled;
+	}
+
+	/**
+	 * Enables keeping the filtered and sorted rows across requests (in whatever scope the table is stored), so turning pages does not
+	 * fetch, filter and sort the rows again. The rows are fetched again when the version of the model, the filters, sortBy or
+	 * the sort direction changes. Requires a model that supports {@link ListModel#getVersion()}, otherwise rows are fetched once per request.
+	 * Not needed for a {@link SharedListModel}, which caches the views of all its tables.
+	 * Filters should not be changed once they are set, set a new filter instead: changes of the filters in
+	 * {@link panama.collections.filters} are detected by their {@link Filter#getState()}, changes of other filters are not.
+	 * @param viewCacheEnabled
+	 * @return the table
+	 */
+	public Table setViewCacheEnabled(boolean viewCacheEnabled) {
+		this.viewCacheEnabled = viewCacheEnabled;
+		if (!viewCacheEnabled) {
+			view = null;
+		}
+		return this;
+	}
+
+	/** whether given number of rows is filtered and sorted in parallel */
+	private boolean isParallel(int rowCount) {
+		int threshold = getParallelThreshold();
+		return threshold > 0 && rowCount >= threshold;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public boolean getPagingEnabled() {
@@ -394,25 +665,60 @@ public class DefaultTable implements Table, Comparator<Object>, Serializable {
 	
 	/**
 	 * Applies all filters onto the specified rows. The original list is not changed by this method.
-	 * It is probably faster to iterate over the rows for every filter as with some luck
-	 * the first filter will already remove some rows, so further filters have less work.
+	 * All filters are evaluated in a single pass, a row is skipped as soon as one filter does not match.
+	 * With at least {@link #getParallelThreshold()} rows, chunks of the rows are filtered in parallel.
 	 * @param rows A list of rows
 	 * @return The filtered list of rows (the original list is not changed by this method)
 	 */
-	protected List applyFilters(List rows) {
-		List result = new ArrayList(rows);
-		for (Map.Entry<String, Filter> e : getFilters().entrySet()) {
-			String k = e.getKey();
-			Filter f = e.getValue();
-			for (Iterator it = result.iterator(); it.hasNext(); ) {
-				if (!f.match(it.next())) {
-					it.remove();
-				}
+	protected List<Object> applyFilters(List<? extends Object> rows) {
+		Filter[] all = getFilters().values().toArray(new Filter[0]);
+		if (isParallel(rows.size())) {
+			return applyFiltersParallel(rows.toArray(), all);
+		}
+		List<Object> result = new ArrayList<Object>(rows.size());
+		for (Object row : rows) {
+			if (matches(row, all)) {
+				result.add(row);
 			}
 		}
 		return result;
 	}
 
+	/**
+	 * Applies filters to consecutive chunks of the rows in parallel, each with the context of the current request.
+	 * The matching rows of the chunks are joined in order, so the result is the same as in a single pass.
+	 */
+	private List<Object> applyFiltersParallel(final Object[] rows, final Filter[] all) {
+		final Context ctx = Context.getInstance();
+		final int chunks = Math.min(rows.length, ForkJoinPool.getCommonPoolParallelism() * 4);
+		List<List<Object>> parts = IntStream.range(0, chunks).parallel().mapToObj(c -> {
+			List<Object> part = new ArrayList<Object>();
+			Context.runWith(ctx, () -> {
+				int end = (int)((long)rows.length * (c + 1) / chunks);
+				for (int i = (int)((long)rows.length * c / chunks); i < end; i++) {
+					if (matches(rows[i], all)) {
+						part.add(rows[i]);
+					}
+				}
+			});
+			return part;
+		}).collect(Collectors.toList());
+		List<Object> result = new ArrayList<Object>();
+		for (List<Object> part : parts) {
+			result.addAll(part);
+		}
+		return result;
+	}
+
+	private static boolean matches(Object row, Filter[] all) {
+		for (Filter f : all) {
+			if (!f.match(row)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public String sortLink(String property) {
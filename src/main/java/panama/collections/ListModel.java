@@ -31,4 +31,13 @@ public interface ListModel {
 	
 	public void setTable(Table table);
 	
+	/**
+	 * Gets version of the list, which must change whenever the list changes.
+	 * Tables with view caching enabled (see {@link DefaultTable#setViewCacheEnabled(boolean)}) keep their filtered and sorted rows
+	 * across requests as long as the version does not change.
+	 * @return the version or -1 if unknown (the default), then rows are fetched from the model once per request
+	 */
+	public default long getVersion() {
+		return -1;
+	}
 }
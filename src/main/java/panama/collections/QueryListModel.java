@@ -16,17 +16,32 @@
 package panama.collections;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 import panama.collections.filters.Filter;
+import panama.core.Tracer;
+import panama.util.PropertyAccessor;
 
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.Expression;
+import com.avaje.ebean.ExpressionFactory;
 import com.avaje.ebean.Query;
 
 
 /**
  * Implementation of {@link ListModel} interface for use with Ebean on persisted data.
  *
+ * By default, pages are fetched with OFFSET, which gets slower the deeper the page is.
+ * With {@link #setKeysetPaging(String)}, the sort values of the first and last row of the page fetched last are remembered
+ * and the next and previous page (as well as the same page again) are fetched with a where clause seeking from these values
+ * (e.g. <code>where sortBy &gt; ? or (sortBy = ? and id &gt; ?)</code>), which an index on the sort property can answer directly.
+ * Jumps to other pages, e.g. the last one, fall back to OFFSET.
+ * Rows with null values in the sort property may be skipped when seeking, so keyset paging should only be used
+ * for tables sorted by non null properties.
+ *
  * @author ridcully
  *
  */
@@ -36,11 +51,145 @@ public class QueryListModel implements ListModel, Serializable {
 
 	protected Table table = null;
 	protected transient Query query = null;
+	protected String keyProperty = null;		// unique property for keyset paging, null for offset paging
+	private transient Keyset keyset = null;		// boundaries of the page fetched last
+
+	/** Boundaries of a page, with everything they depend on */
+	private static class Keyset {
+		final int page;
+		final int entriesPerPage;
+		final String sortBy;
+		final String sortDirection;
+		final Map<String, Object> filters;	// states of the filters
+		final Object firstSort, firstKey, lastSort, lastKey;
+
+		Keyset(Table table, int page, Object firstSort, Object firstKey, Object lastSort, Object lastKey) {
+			this.page = page;
+			this.entriesPerPage = table.getEntriesPerPage();
+			this.sortBy = table.getSortBy();
+			this.sortDirection = table.getSortDirection();
+			this.filters = DefaultTable.getFilterStates(table.getFilters());
+			this.firstSort = firstSort;
+			this.firstKey = firstKey;
+			this.lastSort = lastSort;
+			this.lastKey = lastKey;
+		}
+
+		boolean isValidFor(Table table) {
+			return entriesPerPage == table.getEntriesPerPage() && equal(sortBy, table.getSortBy())
+					&& equal(sortDirection, table.getSortDirection()) && filters.equals(DefaultTable.getFilterStates(table.getFilters()));
+		}
+
+		private static boolean equal(Object a, Object b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+
+	/**
+	 * How a page is fetched with keyset paging: by seeking from a boundary of the page fetched before, or with OFFSET.
+	 * The query is ordered in the direction it seeks, so the previous page is fetched in reverse order and reversed afterwards.
+	 */
+	public static class PageSeek {
+
+		public final static int FIRST = 1;		// first page, neither seek nor offset needed
+		public final static int NEXT = 2;		// rows after the last row of the page fetched before
+		public final static int SAME = 3;		// rows from the first row of the page fetched before on
+		public final static int PREVIOUS = 4;	// rows before the first row of the page fetched before, in reverse order
+		public final static int OFFSET = 5;		// no suitable boundary, skip the rows of the pages before
+
+		private final int mode;
+		private final Object sortValue;
+		private final Object keyValue;
+		private final boolean ascending;
+
+		private PageSeek(int mode, Object sortValue, Object keyValue, boolean ascending) {
+			this.mode = mode;
+			this.sortValue = sortValue;
+			this.keyValue = keyValue;
+			this.ascending = ascending;
+		}
+
+		/**
+		 * Decides how to fetch a page.
+		 * @param page the page to fetch
+		 * @param boundaryPage the page fetched before, 0 if there is none or it was fetched with other filters or sorting
+		 * @param firstSort sort value of the first row of the page fetched before
+		 * @param firstKey key value of the first row of the page fetched before
+		 * @param lastSort sort value of the last row of the page fetched before
+		 * @param lastKey key value of the last row of the page fetched before
+		 * @param sorted whether the rows are sorted by a property (and by the key property after that), otherwise by the key property only
+		 * @param descending whether the rows are sorted in descending order
+		 * @return the decision
+		 */
+		public static PageSeek plan(int page, int boundaryPage, Object firstSort, Object firstKey, Object lastSort, Object lastKey, boolean sorted, boolean descending) {
+			boolean first = firstKey != null && (!sorted || firstSort != null);
+			boolean last = lastKey != null && (!sorted || lastSort != null);
+			if (page == 1) {
+				return new PageSeek(FIRST, null, null, !descending);
+			} else if (boundaryPage > 0 && page == boundaryPage + 1 && last) {
+				return new PageSeek(NEXT, lastSort, lastKey, !descending);
+			} else if (boundaryPage > 0 && page == boundaryPage && first) {
+				return new PageSeek(SAME, firstSort, firstKey, !descending);
+			} else if (boundaryPage > 0 && page == boundaryPage - 1 && first) {
+				return new PageSeek(PREVIOUS, firstSort, firstKey, descending);
+			}
+			return new PageSeek(OFFSET, null, null, !descending);
+		}
+
+		public int getMode() {
+			return mode;
+		}
+
+		/** @return whether to seek from the boundary, otherwise from the first row */
+		public boolean isSeeking() {
+			return mode == NEXT || mode == SAME || mode == PREVIOUS;
+		}
+
+		/** @return sort value of the boundary to seek from */
+		public Object getSortValue() {
+			return sortValue;
+		}
+
+		/** @return key value of the boundary to seek from */
+		public Object getKeyValue() {
+			return keyValue;
+		}
+
+		/** @return whether to seek rows with greater values and order the query ascending, otherwise descending */
+		public boolean isAscending() {
+			return ascending;
+		}
+
+		/** @return whether to include the row at the boundary */
+		public boolean isInclusive() {
+			return mode == SAME;
+		}
+
+		/** @return whether the fetched rows are in reverse order */
+		public boolean isReversed() {
+			return mode == PREVIOUS;
+		}
+	}
 
 	public QueryListModel(Query query) {
 		this.query = query;
 	}
 
+	/**
+	 * Enables keyset paging, see above.
+	 * @param keyProperty a unique property (usually the id), used to order rows with equal sort values; null for OFFSET paging
+	 * @return the model
+	 */
+	public QueryListModel setKeysetPaging(String keyProperty) {
+		this.keyProperty = keyProperty;
+		this.keyset = null;
+		return this;
+	}
+
+	public String getKeyProperty() {
+		return keyProperty;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public List<? extends Object> getList() {
@@ -50,19 +199,108 @@ public class QueryListModel implements ListModel, Serializable {
 			applySorting(query);
 			Query q = applyFilters(query);
 			if (table.getPagingEnabled()) {
+				if (keyProperty != null) {
+					return findPage(q, table.getCurrentPage());
+				}
 				q.setFirstRow((table.getCurrentPage() - 1) * table.getEntriesPerPage());
 				q.setMaxRows(table.getEntriesPerPage());
 			}
-			return q.findList();
+			Tracer.Span span = Tracer.span("query", q.getBeanType().getName());
+			try {
+				return (List<?>)q.findList();
+			} finally {
+				span.close();
+			}
 		}
 	}
 
+	/**
+	 * Fetches page seeking from the boundaries of the page fetched before if possible, with OFFSET otherwise.
+	 */
+	private List<? extends Object> findPage(Query q, int page) {
+		Keyset k = keyset != null && keyset.isValidFor(table) ? keyset : null;
+		String sortBy = getSortProperty();
+		boolean desc = Table.SORT_DESC.equals(table.getSortDirection());
+		PageSeek s = k != null
+				? PageSeek.plan(page, k.page, k.firstSort, k.firstKey, k.lastSort, k.lastKey, sortBy != null, desc)
+				: PageSeek.plan(page, 0, null, null, null, null, sortBy != null, desc);
+		if (s.isSeeking()) {
+			q.where(seek(sortBy, s.getSortValue(), s.getKeyValue(), s.isAscending(), s.isInclusive()));
+			q.orderBy(orderBy(sortBy, s.isAscending()));
+		} else if (s.getMode() == PageSeek.OFFSET) {
+			q.setFirstRow((page - 1) * table.getEntriesPerPage());
+		}
+		q.setMaxRows(table.getEntriesPerPage());
+		List<Object> rows;
+		Tracer.Span span = Tracer.span("query", q.getBeanType().getName());
+		try {
+			rows = new ArrayList<Object>((List<?>)q.findList());
+		} finally {
+			span.close();
+		}
+		if (s.isReversed()) {
+			Collections.reverse(rows);
+		}
+		rememberBoundaries(page, sortBy, rows);
+		return rows;
+	}
+
+	/**
+	 * Creates expression for rows after (or before) given sort and key values.
+	 * @param ascending whether to seek rows with greater values
+	 * @param inclusive whether to include the row with given values
+	 */
+	private Expression seek(String sortBy, Object sortValue, Object keyValue, boolean ascending, boolean inclusive) {
+		ExpressionFactory f = Ebean.getExpressionFactory();
+		Expression key = ascending ? (inclusive ? f.ge(keyProperty, keyValue) : f.gt(keyProperty, keyValue))
+				: (inclusive ? f.le(keyProperty, keyValue) : f.lt(keyProperty, keyValue));
+		if (sortBy == null) {
+			return key;
+		}
+		Expression sort = ascending ? f.gt(sortBy, sortValue) : f.lt(sortBy, sortValue);
+		return f.or(sort, f.and(f.eq(sortBy, sortValue), key));
+	}
+
+	private String orderBy(String sortBy, boolean ascending) {
+		String direction = ascending ? Table.SORT_ASC : Table.SORT_DESC;
+		return sortBy != null ? sortBy+" "+direction+", "+keyProperty+" "+direction : keyProperty+" "+direction;
+	}
+
+	/** @return property the rows are sorted by, null if not sorted */
+	private String getSortProperty() {
+		return table.getSortBy() != null && !Table.SORT_NONE.equals(table.getSortDirection()) ? table.getSortBy() : null;
+	}
+
+	private void rememberBoundaries(int page, String sortBy, List<Object> rows) {
+		if (rows.isEmpty()) {
+			keyset = null;
+			return;
+		}
+		Object first = rows.get(0);
+		Object last = rows.get(rows.size() - 1);
+		try {
+			keyset = new Keyset(table, page, sortValue(sortBy, first), property(first, keyProperty), sortValue(sortBy, last), property(last, keyProperty));
+		} catch (Exception e) {
+			keyset = null;	// use OFFSET
+		}
+	}
+
+	private Object sortValue(String sortBy, Object row) throws Exception {
+		return sortBy != null ? property(row, sortBy) : null;
+	}
+
+	private static Object property(Object row, String name) throws Exception {
+		return PropertyAccessor.forProperty(row.getClass(), name).get(row);
+	}
+
 	/**
 	 * Applies sorting as defined in Table to specified Query.
 	 * @param query
 	 */
 	protected void applySorting(Query query) {
-		if (table.getSortBy() != null && table.getSortDirection() != Table.SORT_NONE) {
+		if (keyProperty != null) {
+			query.orderBy(orderBy(getSortProperty(), !Table.SORT_DESC.equals(table.getSortDirection())));
+		} else if (table.getSortBy() != null && table.getSortDirection() != Table.SORT_NONE) {
 			query.orderBy(table.getSortBy()+" "+table.getSortDirection());
 		} else {
 			query.orderBy("");
@@ -87,13 +325,38 @@ public class QueryListModel implements ListModel, Serializable {
 		return q;
 	}
 
+	/**
+	 * Estimates number of rows, e.g. from the statistics of the database, which is much faster than counting them.
+	 * Used by {@link QueryTable} if approximate row counts are enabled. This implementation returns -1,
+	 * override it to e.g. read <code>reltuples</code> from <code>pg_class</code> with PostgreSQL.
+	 * @param query the query including the filters of the table
+	 * @return estimated number of rows or -1 if no estimate is available (e.g. because of the filters), then the rows are counted
+	 */
+	public int estimateRowCount(Query query) {
+		return -1;
+	}
+
+	/**
+	 * Gets estimated number of rows.
+	 * @see #estimateRowCount(Query)
+	 * @return estimated number of rows or -1
+	 */
+	public int getEstimatedRowCount() {
+		return query != null ? estimateRowCount(applyFilters(query)) : 0;
+	}
+
 	public int getRowCount() {
 		if (query == null) {
 			return 0;
 		} else {
 			applySorting(query);
 			Query q = applyFilters(query);
-			return q.findRowCount();
+			Tracer.Span span = Tracer.span("count", q.getBeanType().getName());
+			try {
+				return q.findRowCount();
+			} finally {
+				span.close();
+			}
 		}
 	}
 
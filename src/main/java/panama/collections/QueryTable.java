@@ -16,18 +16,41 @@
 package panama.collections;
 
 import java.util.List;
+import java.util.Map;
 
 import panama.collections.DefaultTable;
+import panama.collections.filters.Filter;
 import panama.core.Context;
 
 
 /**
+ * Table for a {@link QueryListModel}, fetching only the rows of the current page from the database.
+ *
+ * Counting the rows of large tables is expensive, so the row count can be made approximate with {@link #setApproximateRowCount(int)}:
+ * it is then estimated by the model (see {@link QueryListModel#estimateRowCount(com.avaje.ebean.Query)}) or counted and
+ * kept for the specified time across requests.
+ *
  * @author ridcully
  *
  */
 public class QueryTable extends DefaultTable {
 
 	private String rowCountCache = cacheCode + "_rowCount";
+	protected int rowCountMaxAge = 0;		// seconds to keep the row count across requests, 0 to count in every request
+	private transient RowCount rowCount = null;
+
+	/** Row count with the states of the filters it was counted with, so filters changed in place are detected */
+	private static class RowCount {
+		final int count;
+		final Map<String, Object> filters;
+		final long time;
+
+		RowCount(int count, Map<String, Filter> filters) {
+			this.count = count;
+			this.filters = getFilterStates(filters);
+			this.time = System.currentTimeMillis();
+		}
+	}
 
 	public QueryTable(String key, QueryListModel model) {
 		super(key, model);
@@ -64,7 +87,7 @@ public class QueryTable extends DefaultTable {
 			cnt = (Integer)ctx.get(rowCountCache);
 		}
 		if (cnt == null) {
-			n = ((QueryListModel)model).getRowCount();
+			n = rowCountMaxAge > 0 ? getApproximateRowCount() : ((QueryListModel)model).getRowCount();
 			if (ctx != null) {
 				ctx.put(rowCountCache, new Integer(n));
 			}
@@ -73,4 +96,33 @@ public class QueryTable extends DefaultTable {
 		}
 		return n;
 	}
+
+	/**
+	 * Gets estimated row count or the row count counted within the last {@link #rowCountMaxAge} seconds with the same filters.
+	 */
+	private int getApproximateRowCount() {
+		RowCount c = rowCount;
+		if (c != null && c.filters.equals(getFilterStates(getFilters())) && System.currentTimeMillis() - c.time < rowCountMaxAge * 1000L) {
+			return c.count;
+		}
+		QueryListModel m = (QueryListModel)model;
+		int n = m.getEstimatedRowCount();
+		if (n < 0) {
+			n = m.getRowCount();
+		}
+		rowCount = new RowCount(n, getFilters());
+		return n;
+	}
+
+	/**
+	 * Makes the row count approximate, so it is not counted in every request, see above.
+	 * Note that the page count is derived from the row count, so with an outdated count the last page may be missing or empty.
+	 * @param maxAgeSeconds seconds to keep the row count, 0 to count the rows in every request
+	 * @return the table
+	 */
+	public QueryTable setApproximateRowCount(int maxAgeSeconds) {
+		this.rowCountMaxAge = Math.max(0, maxAgeSeconds);
+		this.rowCount = null;
+		return this;
+	}
 }
@@ -0,0 +1,206 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.collections;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import panama.collections.filters.Filter;
+
+/**
+ * A model for rows shared by many tables, e.g. reference data shown to all users, to be kept in application scope.
+ *
+ * The model holds an immutable snapshot of the rows, which is replaced as a whole on updates (copy on write),
+ * so the rows exist only once, no matter how many tables show them. The tables (usually one per session) only hold their
+ * sorting, filters and current page.
+ *
+ * The filtered and sorted rows of a {@link DefaultTable} are cached per distinct view, i.e. per combination of
+ * table class, filters (compared by their state, see {@link Filter#getState()}), sortBy and sort direction,
+ * so tables showing the same view share them. The views are dropped with the snapshot when the rows are updated.
+ *
+ * <pre>
+ * public final static SharedListModel COUNTRIES = new SharedListModel(loadCountries());
+ * ...
+ * Table table = registerTable(new DefaultTable("countries", COUNTRIES));
+ * </pre>
+ *
+ * @author ridcully
+ */
+public class SharedListModel implements ListModel {
+
+	private final static int DEFAULT_MAX_VIEWS = 100;
+
+	/** Immutable rows with the views created from them */
+	private static class Snapshot {
+		final List<? extends Object> rows;
+		final long version;
+		final Map<ViewKey, List<? extends Object>> views;
+
+		Snapshot(List<? extends Object> rows, long version, final int maxViews) {
+			this.rows = rows;
+			this.version = version;
+			this.views = new LinkedHashMap<ViewKey, List<? extends Object>>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<ViewKey, List<? extends Object>> eldest) {
+					return size() > maxViews;
+				}
+			};
+		}
+	}
+
+	/** Everything a view depends on */
+	private static class ViewKey {
+		final Class<?> tableClass;
+		final Map<String, Object> filters;	// states of the filters, a filter changed in place leads to another key
+		final String sortBy;
+		final String sortDirection;
+
+		ViewKey(DefaultTable table) {
+			this.tableClass = table.getClass();
+			this.filters = DefaultTable.getFilterStates(table.getFilters());
+			this.sortBy = table.getSortBy();
+			this.sortDirection = table.getSortBy() != null ? table.getSortDirection() : null;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof ViewKey)) {
+				return false;
+			}
+			ViewKey k = (ViewKey)o;
+			return tableClass == k.tableClass && filters.equals(k.filters) && equal(sortBy, k.sortBy) && equal(sortDirection, k.sortDirection);
+		}
+
+		@Override
+		public int hashCode() {
+			int h = tableClass.hashCode();
+			h = 31 * h + filters.hashCode();
+			h = 31 * h + (sortBy != null ? sortBy.hashCode() : 0);
+			h = 31 * h + (sortDirection != null ? sortDirection.hashCode() : 0);
+			return h;
+		}
+
+		private static boolean equal(Object a, Object b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+
+	private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>();
+	private final int maxViews;
+
+	public SharedListModel(List<? extends Object> rows) {
+		this(rows, DEFAULT_MAX_VIEWS);
+	}
+
+	/**
+	 * @param rows the rows, they are copied
+	 * @param maxViews max. number of distinct views to cache, least recently used ones are dropped first
+	 */
+	public SharedListModel(List<? extends Object> rows, int maxViews) {
+		this.maxViews = maxViews;
+		snapshot.set(new Snapshot(copy(rows), 0, maxViews));
+	}
+
+	private static List<? extends Object> copy(List<? extends Object> rows) {
+		return Collections.unmodifiableList(rows != null ? new ArrayList<Object>(rows) : new ArrayList<Object>());
+	}
+
+	/**
+	 * Gets the current rows.
+	 * @return unmodifiable list of the rows, it is not changed by updates
+	 */
+	@Override
+	public List<? extends Object> getList() {
+		return snapshot.get().rows;
+	}
+
+	/**
+	 * Does nothing, a shared model is not bound to a table.
+	 */
+	@Override
+	public void setTable(Table table) {
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public long getVersion() {
+		return snapshot.get().version;
+	}
+
+	/**
+	 * Replaces all rows.
+	 * @param rows the new rows, they are copied
+	 */
+	public void setList(List<? extends Object> rows) {
+		List<? extends Object> next = copy(rows);
+		Snapshot current;
+		do {
+			current = snapshot.get();
+		} while (!snapshot.compareAndSet(current, new Snapshot(next, current.version + 1, maxViews)));
+	}
+
+	/**
+	 * Updates rows atomically: the function gets a modifiable copy of the current rows and returns the new rows.
+	 * If another update happened meanwhile, the function is called again with the new rows, so it must not have side effects.
+	 * @param function
+	 */
+	public void update(UnaryOperator<List<Object>> function) {
+		Snapshot current;
+		Snapshot next;
+		do {
+			current = snapshot.get();
+			List<? extends Object> rows = function.apply(new ArrayList<Object>(current.rows));
+			next = new Snapshot(copy(rows), current.version + 1, maxViews);
+		} while (!snapshot.compareAndSet(current, next));
+	}
+
+	/**
+	 * Gets the rows of given table, filtered and sorted as specified by the table.
+	 * The view is created by the table once and then shared with all tables showing the same view.
+	 * @param table
+	 * @return unmodifiable list of the rows
+	 */
+	List<? extends Object> getRows(DefaultTable table) {
+		Snapshot s = snapshot.get();
+		ViewKey key = new ViewKey(table);
+		List<? extends Object> rows;
+		synchronized (s.views) {
+			rows = s.views.get(key);
+		}
+		if (rows == null) {
+			rows = Collections.unmodifiableList(table.filterAndSort(s.rows));
+			synchronized (s.views) {
+				s.views.put(key, rows);
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * @return number of views cached for the current rows
+	 */
+	public int getViewCount() {
+		Snapshot s = snapshot.get();
+		synchronized (s.views) {
+			return s.views.size();
+		}
+	}
+}
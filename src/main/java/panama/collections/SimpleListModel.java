@@ -29,6 +29,7 @@ public class SimpleListModel implements ListModel, Serializable {
 	private static final long serialVersionUID = 1L;
 	
 	private List list;
+	private volatile long version = 0;
 	protected Table table = null;
 	
 	public SimpleListModel() {
@@ -56,5 +57,22 @@ public class SimpleListModel implements ListModel, Serializable {
 	 */
 	public void setList(List<? extends Object> list) {
 		this.list = list;
+		modified();
+	}
+
+	/**
+	 * Must be called after the list was changed, if the model is used by tables with view caching enabled.
+	 */
+	public void modified() {
+		version++;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * Changes when a new list is set or {@link #modified()} is called.
+	 */
+	@Override
+	public long getVersion() {
+		return version;
 	}
 }
@@ -60,6 +60,17 @@ public class Filter implements Serializable {
 		return Ebean.getExpressionFactory().raw("1=1");
 	}
 
+	/**
+	 * Gets a snapshot of the state of the filter, to detect if a filter was changed after it was set on a table
+	 * whose filtered rows are cached (see {@link panama.collections.DefaultTable#setViewCacheEnabled(boolean)}).
+	 * Filters with equal states must match the same objects.
+	 * The method in this base class returns the filter itself (so it is only equal to itself), classes with a state that may be changed return an immutable copy of it.
+	 * @return the state, compared by equals()
+	 */
+	public Object getState() {
+		return this;
+	}
+
 	/**
 	 * Gets a string representation of the filter.
 	 * @return A string representation of the filter.
@@ -15,6 +15,8 @@
  */
 package panama.collections.filters;
 
+import java.util.Arrays;
+
 import com.avaje.ebean.Ebean;
 import com.avaje.ebean.Expression;
 import com.avaje.ebean.Junction;
@@ -58,6 +60,16 @@ public class LogicalExpression extends Filter {
 		return false;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public Object getState() {
+		Object[] states = new Object[filters.length];
+		for (int i = 0; i < filters.length; i++) {
+			states[i] = filters[i] != null ? filters[i].getState() : null;
+		}
+		return Arrays.asList(getClass(), op, Arrays.asList(states));
+	}
+
 	public String toString() {
 		StringBuffer res = new StringBuffer();
 		switch (op) {
@@ -15,6 +15,7 @@
  */
 package panama.collections.filters;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -90,6 +91,12 @@ public class PropertyComparator extends Filter {
 		return "PropertyComparator("+pattern+")";
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public Object getState() {
+		return Arrays.asList(getClass(), pattern, mode, properties != null ? new ArrayList<String>(properties) : null);
+	}
+
 	/**
 	 * Tests one property - this method may be overwritten by extending classes.
 	 * @param name
@@ -141,6 +148,12 @@ public class PropertyComparator extends Filter {
 		return mode;
 	}
 
+	/**
+	 * Changes the mode. Do not change a comparator once it is set on a table, set a new one instead:
+	 * tables sharing rows or caching views (see {@link panama.collections.SharedListModel}) hold on to the comparator
+	 * and recognize the change only by its {@link #getState()}.
+	 * @param mode
+	 */
 	public void setMode(int mode) {
 		this.mode = mode;
 	}
@@ -149,6 +162,10 @@ public class PropertyComparator extends Filter {
 		return pattern;
 	}
 
+	/**
+	 * Changes the pattern. Do not change a comparator once it is set on a table, set a new one instead, see {@link #setMode(int)}.
+	 * @param pattern
+	 */
 	public void setPattern(Object pattern) {
 		this.pattern = pattern;
 	}
@@ -157,6 +174,10 @@ public class PropertyComparator extends Filter {
 		return properties;
 	}
 
+	/**
+	 * Changes the properties. Do not change a comparator once it is set on a table, set a new one instead, see {@link #setMode(int)}.
+	 * @param properties
+	 */
 	public void setProperties(List<String> properties) {
 		this.properties = properties;
 	}
@@ -15,6 +15,7 @@
  */
 package panama.collections.filters;
 
+import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -63,6 +64,12 @@ public class RegExpPropertyComparator extends PropertyComparator {
 		return matches;
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public Object getState() {
+		return Arrays.asList(super.getState(), regExpPattern.pattern(), regExpPattern.flags());
+	}
+
 	/**
 	 * Expression for one Property.
 	 * Note, that the pattern itself must contain SQL wildcards like % or _ here if you want partial matches, 
@@ -0,0 +1,165 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import panama.log.SimpleLogger;
+
+/**
+ * Invokes an action method of a controller.
+ *
+ * An invoker is created once per action when the Dispatcher collects the actions (see {@link Dispatcher#createActionInvoker(Method)}).
+ * There are methods for up to three arguments, so the most common actions can be invoked without creating an argument array.
+ *
+ * Exceptions thrown by the action method are passed on as they are, i.e. not wrapped in an {@link InvocationTargetException}.
+ *
+ * @author ridcully
+ */
+public abstract class ActionInvoker {
+
+	protected static SimpleLogger log = new SimpleLogger(ActionInvoker.class);
+
+	private final static Object[] NO_ARGS = new Object[0];
+
+	protected final Method method;
+
+	protected ActionInvoker(Method method) {
+		this.method = method;
+	}
+
+	/**
+	 * Creates an invoker for given method, using method handles if possible and reflection otherwise.
+	 * @param method an action method
+	 * @return an ActionInvoker
+	 */
+	public static ActionInvoker create(Method method) {
+		try {
+			return new MethodHandleInvoker(method);
+		} catch (Exception e) {
+			log.warn("Could not create method handle for "+method+", using reflection instead: "+e.getMessage());
+			return createReflective(method);
+		}
+	}
+
+	/**
+	 * Creates an invoker for given method, using plain reflection.
+	 * @param method an action method
+	 * @return an ActionInvoker
+	 */
+	public static ActionInvoker createReflective(Method method) {
+		return new ReflectionInvoker(method);
+	}
+
+	public Method getMethod() {
+		return method;
+	}
+
+	public Target invoke(BaseController controller) throws Throwable {
+		return invoke(controller, NO_ARGS);
+	}
+
+	public Target invoke(BaseController controller, Object arg0) throws Throwable {
+		return invoke(controller, new Object[] {arg0});
+	}
+
+	public Target invoke(BaseController controller, Object arg0, Object arg1) throws Throwable {
+		return invoke(controller, new Object[] {arg0, arg1});
+	}
+
+	public Target invoke(BaseController controller, Object arg0, Object arg1, Object arg2) throws Throwable {
+		return invoke(controller, new Object[] {arg0, arg1, arg2});
+	}
+
+	/**
+	 * Invokes the action method with any number of arguments.
+	 * @param controller the controller to invoke the method on
+	 * @param args the arguments, number must match the method's number of parameters
+	 * @return the Target returned by the action method
+	 * @throws Throwable anything the action method throws
+	 */
+	public abstract Target invoke(BaseController controller, Object[] args) throws Throwable;
+
+	/**
+	 * Invoker using {@link Method#invoke(Object, Object...)}
+	 */
+	private static class ReflectionInvoker extends ActionInvoker {
+
+		ReflectionInvoker(Method method) {
+			super(method);
+		}
+
+		@Override
+		public Target invoke(BaseController controller, Object[] args) throws Throwable {
+			try {
+				return (Target)method.invoke(controller, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
+
+	/**
+	 * Invoker using a method handle adapted to Object parameters, so it can be invoked exactly without further type checks.
+	 */
+	private static class MethodHandleInvoker extends ActionInvoker {
+
+		private final MethodHandle handle;	// (Object, Object...)Object with fixed arity
+		private final MethodHandle spreader;	// (Object, Object[])Object
+
+		MethodHandleInvoker(Method method) throws IllegalAccessException {
+			super(method);
+			int arity = method.getParameterTypes().length;
+			MethodHandle mh = MethodHandles.lookup().unreflect(method);
+			handle = mh.asType(MethodType.genericMethodType(arity + 1));
+			spreader = handle.asSpreader(Object[].class, arity);
+		}
+
+		@Override
+		public Target invoke(BaseController controller) throws Throwable {
+			Object result = handle.invokeExact((Object)controller);
+			return (Target)result;
+		}
+
+		@Override
+		public Target invoke(BaseController controller, Object arg0) throws Throwable {
+			Object result = handle.invokeExact((Object)controller, arg0);
+			return (Target)result;
+		}
+
+		@Override
+		public Target invoke(BaseController controller, Object arg0, Object arg1) throws Throwable {
+			Object result = handle.invokeExact((Object)controller, arg0, arg1);
+			return (Target)result;
+		}
+
+		@Override
+		public Target invoke(BaseController controller, Object arg0, Object arg1, Object arg2) throws Throwable {
+			Object result = handle.invokeExact((Object)controller, arg0, arg1, arg2);
+			return (Target)result;
+		}
+
+		@Override
+		public Target invoke(BaseController controller, Object[] args) throws Throwable {
+			Object result = spreader.invokeExact((Object)controller, args);
+			return (Target)result;
+		}
+	}
+}
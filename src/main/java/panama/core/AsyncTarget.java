@@ -0,0 +1,85 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.core;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Target that is completed later, e.g. when a slow backend responds.
+ *
+ * If the Dispatcher filter is declared with &lt;async-supported&gt;true&lt;/async-supported&gt; in web.xml,
+ * the container thread is released while waiting, and the completed target is rendered on the thread completing the stage,
+ * with the context of the request set as current context.
+ * Otherwise (and when embedded as a tile) {@link #go()} waits for the target.
+ * <pre>
+ * &#64;Action
+ * public Target quote() {
+ *     return new AsyncTarget(backend.fetchQuote().thenApply(q -&gt; new JsonTarget(q.toJson())));
+ * }
+ * </pre>
+ * @author ridcully
+ */
+public class AsyncTarget extends Target {
+
+	private final CompletionStage<? extends Target> stage;
+	private final long timeout;
+
+	/**
+	 * @param stage completing with the target to go to
+	 */
+	public AsyncTarget(CompletionStage<? extends Target> stage) {
+		this(stage, 0);
+	}
+
+	/**
+	 * @param stage completing with the target to go to
+	 * @param timeoutMillis max. time to wait for the target, 0 for the default of {@link Dispatcher#PARAM_ASYNC_TIMEOUT}
+	 */
+	public AsyncTarget(CompletionStage<? extends Target> stage, long timeoutMillis) {
+		this.stage = stage;
+		this.timeout = timeoutMillis;
+	}
+
+	public CompletionStage<? extends Target> getStage() {
+		return stage;
+	}
+
+	/**
+	 * @return max. time in ms to wait for the target, 0 for the default
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Waits for the target and goes to it.
+	 */
+	@Override
+	public void go() throws Exception {
+		long millis = timeout > 0 ? timeout : Context.getInstance().getCore().getAsyncTimeout();
+		Target target;
+		try {
+			target = stage.toCompletableFuture().get(millis, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+		}
+		if (target != null) {
+			target.go();
+		}
+	}
+}
@@ -51,8 +51,28 @@ public class BaseController {
 	/** Logging */
 	protected static SimpleLogger log = new SimpleLogger(BaseController.class);
 
-	/** Current context for convinience */
-	protected final Context context = Context.getInstance();
+	/**
+	 * Current context for convinience.
+	 * This is null for controllers with scope {@link Controller.Scope#SINGLETON}, use {@link #getContext()} there.
+	 */
+	protected Context context = Context.getInstance();
+
+	/**
+	 * Gets the current context. Works for all scopes of controllers, see {@link Controller#scope()}.
+	 * @return the context of the current request
+	 */
+	protected Context getContext() {
+		return context != null ? context : Context.getInstance();
+	}
+
+	/**
+	 * This method is invoked by the dispatcher before a controller with scope {@link Controller.Scope#POOLED}
+	 * is put back into the pool to be reused for another request.
+	 * Default implementation does nothing.
+	 * Overwrite it to reset any state your controller keeps between beforeAction() and afterAction().
+	 */
+	protected void reset() {
+	}
 
 	/**
 	 * This method is invoked every time, before an action of this controller is
@@ -139,7 +159,7 @@ public class BaseController {
 	 * @return A Target object
 	 */
 	public Target redirectToAction(Class<? extends BaseController> controllerClass, String action, String... optionalParamsAndValues) {
-		Map<Object, Object> parameterMap = context.buildParameterMap(optionalParamsAndValues);
+		Map<Object, Object> parameterMap = getContext().buildParameterMap(optionalParamsAndValues);
 		return internalRedirectToAction(controllerClass, action, parameterMap);
 	}
 
@@ -210,6 +230,7 @@ public class BaseController {
 	 * @throws HttpErrorException
 	 */
 	public Target executeAction(String actionName, String... optionalParamsAndValues) throws ForceTargetException, NoSuchActionException, HttpErrorException {
+		Context context = getContext();
 		@SuppressWarnings("rawtypes")
 		Map originalParameters = context.getParameterMap();
 		try {
@@ -243,7 +264,7 @@ public class BaseController {
 				table.setModel(initialTable.getModel());
 			}
 		}
-		context.put(table.getKey(), table);
+		getContext().put(table.getKey(), table);
 		return table;
 	}
 
@@ -259,11 +280,11 @@ public class BaseController {
 	/** lazily create tableMap */
 	private Map<String, Table> getTableMap() {
 		@SuppressWarnings("unchecked")
-		Map<String, Table> map = (Map<String, Table>)context.session.get(TABLEMAP_KEY);
+		Map<String, Table> map = (Map<String, Table>)getContext().session.get(TABLEMAP_KEY);
 		if (map == null) {
 			/* create map if not already there */
 			map = new HashMap<String, Table>();
-			Context.getInstance().session.put(TABLEMAP_KEY, map);
+			getContext().session.put(TABLEMAP_KEY, map);
 		}
 		return map;
 	}
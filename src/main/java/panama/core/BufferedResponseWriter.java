@@ -0,0 +1,414 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Writer that encodes everything written to it as UTF-8 into a byte buffer, that is reused by the thread.
+ * When finished, the Content-Length is set and the whole buffer is written to the response at once.
+ *
+ * If the output exceeds the limit given when opening the writer, the buffered bytes are written to the response
+ * and the writer continues streaming (without Content-Length), using the buffer as chunk buffer.
+ *
+ * If a compression is set via {@link #setCompression(String, int, int)}, output of at least the specified size is compressed
+ * (using Deflater instances reused by the thread) and sent with the Content-Encoding header.
+ *
+ * Usage:
+ * <pre>
+ * BufferedResponseWriter w = BufferedResponseWriter.open(response, limit);
+ * try {
+ *     ... write ...
+ *     w.finish();
+ * } finally {
+ *     w.close();
+ * }
+ * </pre>
+ *
+ * @author ridcully
+ */
+public class BufferedResponseWriter extends Writer {
+
+	private final static int INITIAL_SIZE = 8192;
+	private final static int SLICE = 2048;			// chars encoded at once, max. 3 bytes per char must fit into INITIAL_SIZE
+
+	public final static String GZIP = "gzip";
+	public final static String DEFLATE = "deflate";
+
+	private final static byte[] GZIP_HEADER = {0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+	private final static ThreadLocal<BufferedResponseWriter> writers = new ThreadLocal<BufferedResponseWriter>() {
+		@Override
+		protected BufferedResponseWriter initialValue() {
+			return new BufferedResponseWriter(true);
+		}
+	};
+
+	private byte[] buf = new byte[INITIAL_SIZE];
+	private int count;
+	private int limit;
+	private int retainSize;		// max. size of the buffers to keep for the next use
+	private char highSurrogate;
+	private boolean active;
+	private HttpServletResponse response;
+	private OutputStream out;	// set as soon as we are streaming
+	private final boolean pooled;
+
+	private String encoding;	// content encoding to compress with, null for none
+	private int compressionMinSize;
+	private int compressionLevel;
+	private Deflater gzipDeflater;	// created lazily and reused
+	private Deflater zlibDeflater;
+	private ByteArrayOutputStream compressed;
+	private byte[] chunk;
+
+	private BufferedResponseWriter(boolean pooled) {
+		this.pooled = pooled;
+	}
+
+	/**
+	 * Opens the writer of the current thread for given response.
+	 * @param response
+	 * @param limit max. number of bytes to buffer before switching to streaming
+	 * @return an empty writer
+	 */
+	public static BufferedResponseWriter open(HttpServletResponse response, int limit) {
+		return open(response, limit, limit);
+	}
+
+	/**
+	 * Opens the writer of the current thread for given response.
+	 * @param response
+	 * @param limit max. number of bytes to buffer before switching to streaming
+	 * @param retainSize max. number of bytes of the buffers kept by the thread after closing, usually the configured buffer size;
+	 * 			larger buffers are dropped, so a single large response does not grow the buffer of the thread for good
+	 * @return an empty writer
+	 */
+	public static BufferedResponseWriter open(HttpServletResponse response, int limit, int retainSize) {
+		BufferedResponseWriter w = writers.get();
+		if (w.active) {
+			w = new BufferedResponseWriter(false);	// should not happen, but don't mess up the output of someone else
+		}
+		w.response = response;
+		w.limit = Math.max(limit, INITIAL_SIZE);
+		w.retainSize = Math.max(retainSize, INITIAL_SIZE);
+		w.count = 0;
+		w.highSurrogate = 0;
+		w.out = null;
+		w.encoding = null;
+		w.active = true;
+		return w;
+	}
+
+	/**
+	 * Gets writer currently open in this thread, so nested renderings (e.g. tiles) can write into the same buffer.
+	 * @return the open writer or null
+	 */
+	public static BufferedResponseWriter getActive() {
+		BufferedResponseWriter w = writers.get();
+		return w.active ? w : null;
+	}
+
+	/**
+	 * Sets compression to apply to the output.
+	 * @param encoding {@link #GZIP}, {@link #DEFLATE} or null for no compression
+	 * @param minSize min. number of bytes to compress, smaller output is sent uncompressed
+	 * @param level compression level 0-9 or -1 for the default level, see {@link Deflater}
+	 */
+	public void setCompression(String encoding, int minSize, int level) {
+		this.encoding = encoding;
+		this.compressionMinSize = minSize;
+		this.compressionLevel = level;
+	}
+
+	/**
+	 * @return content encoding the output will be compressed with, null if it will not be compressed (as far as known yet)
+	 */
+	public String getCompression() {
+		return encoding != null && (out != null || count >= compressionMinSize) ? encoding : null;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		ensure(4);
+		encode((char)c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = Math.min(len, SLICE);
+			ensure(n * 3 + 1);
+			for (int i = off; i < off + n; i++) {
+				encode(cbuf[i]);
+			}
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = Math.min(len, SLICE);
+			ensure(n * 3 + 1);
+			for (int i = off; i < off + n; i++) {
+				encode(str.charAt(i));
+			}
+			off += n;
+			len -= n;
+		}
+	}
+
+	/** makes sure there is room for n more bytes, growing the buffer or switching to streaming */
+	private void ensure(int n) throws IOException {
+		if (count + n <= buf.length) {
+			return;
+		}
+		if (out == null && count + n <= limit) {
+			byte[] bigger = new byte[Math.min(limit, Math.max(buf.length * 2, count + n))];
+			System.arraycopy(buf, 0, bigger, 0, count);
+			buf = bigger;
+			return;
+		}
+		if (out == null) {
+			out = openStream();
+		}
+		out.write(buf, 0, count);
+		count = 0;
+	}
+
+	/** opens stream for streaming the output, compressing it if requested */
+	private OutputStream openStream() throws IOException {
+		if (encoding == null) {
+			return response.getOutputStream();
+		}
+		response.setHeader("Content-Encoding", encoding);
+		return new DeflaterOutputStream(response.getOutputStream());
+	}
+
+	private void encode(char c) {
+		if (highSurrogate != 0) {
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if (Character.isLowSurrogate(c)) {
+				int cp = Character.toCodePoint(high, c);
+				buf[count++] = (byte)(0xF0 | (cp >> 18));
+				buf[count++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+				buf[count++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+				buf[count++] = (byte)(0x80 | (cp & 0x3F));
+				return;
+			}
+			buf[count++] = '?';	// unpaired surrogate
+		}
+		if (c < 0x80) {
+			buf[count++] = (byte)c;
+		} else if (c < 0x800) {
+			buf[count++] = (byte)(0xC0 | (c >> 6));
+			buf[count++] = (byte)(0x80 | (c & 0x3F));
+		} else if (Character.isHighSurrogate(c)) {
+			highSurrogate = c;
+		} else if (Character.isLowSurrogate(c)) {
+			buf[count++] = '?';	// unpaired surrogate
+		} else {
+			buf[count++] = (byte)(0xE0 | (c >> 12));
+			buf[count++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+			buf[count++] = (byte)(0x80 | (c & 0x3F));
+		}
+	}
+
+	/**
+	 * @return whether the limit was exceeded and output is streamed directly to the response
+	 */
+	public boolean isStreaming() {
+		return out != null;
+	}
+
+	/**
+	 * @return number of bytes currently buffered
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Updates digest with the bytes currently buffered, e.g. for computing an ETag.
+	 * @param md
+	 */
+	public void update(MessageDigest md) {
+		md.update(buf, 0, count);
+	}
+
+	/**
+	 * Does nothing while buffering, as the response must not be committed before finish().
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (out != null) {
+			out.write(buf, 0, count);
+			count = 0;
+			out.flush();
+		}
+	}
+
+	/**
+	 * Writes the buffered bytes to the response, setting the Content-Length unless we are streaming already.
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		if (highSurrogate != 0) {
+			ensure(1);
+			highSurrogate = 0;
+			buf[count++] = '?';
+		}
+		if (out == null) {
+			if (getCompression() != null) {
+				if (compressed == null) {
+					compressed = new ByteArrayOutputStream(INITIAL_SIZE);
+				}
+				compressed.reset();
+				DeflaterOutputStream deflaterStream = new DeflaterOutputStream(compressed);
+				deflaterStream.write(buf, 0, count);
+				deflaterStream.finish();
+				count = 0;
+				response.setHeader("Content-Encoding", encoding);
+				response.setContentLength(compressed.size());
+				out = response.getOutputStream();
+				compressed.writeTo(out);
+				if (compressed.size() > retainSize) {
+					compressed = null;	// don't keep more than the configured buffer size per thread
+				}
+				return;
+			}
+			response.setContentLength(count);
+			out = response.getOutputStream();
+		}
+		out.write(buf, 0, count);
+		count = 0;
+		if (out instanceof DeflaterOutputStream) {
+			((DeflaterOutputStream)out).finish();
+		}
+	}
+
+	/**
+	 * Releases the writer, so it can be opened again. Does not close the response.
+	 */
+	@Override
+	public void close() {
+		active = false;
+		response = null;
+		out = null;
+		count = 0;
+		if (buf.length > retainSize) {
+			buf = new byte[INITIAL_SIZE];
+		}
+		if (!pooled) {
+			if (gzipDeflater != null) gzipDeflater.end();
+			if (zlibDeflater != null) zlibDeflater.end();
+		}
+	}
+
+	/**
+	 * Deflates into given stream, in gzip or zlib format depending on the encoding, using the deflater of this writer.
+	 * Unlike java.util.zip.DeflaterOutputStream, flush() does not flush the deflater, as this would worsen compression.
+	 */
+	private class DeflaterOutputStream extends OutputStream {
+		private final OutputStream target;
+		private final Deflater deflater;
+		private final CRC32 crc;
+
+		DeflaterOutputStream(OutputStream target) throws IOException {
+			this.target = target;
+			boolean gzip = GZIP.equals(encoding);
+			if (gzip) {
+				if (gzipDeflater == null) {
+					gzipDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+				}
+				deflater = gzipDeflater;
+				crc = new CRC32();
+				target.write(GZIP_HEADER);
+			} else {
+				if (zlibDeflater == null) {
+					zlibDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, false);
+				}
+				deflater = zlibDeflater;
+				crc = null;
+			}
+			deflater.reset();
+			deflater.setLevel(compressionLevel);
+			if (chunk == null) {
+				chunk = new byte[INITIAL_SIZE];
+			}
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte)b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return;
+			}
+			if (crc != null) {
+				crc.update(b, off, len);
+			}
+			deflater.setInput(b, off, len);
+			while (!deflater.needsInput()) {
+				deflate();
+			}
+		}
+
+		private void deflate() throws IOException {
+			int n = deflater.deflate(chunk, 0, chunk.length);
+			if (n > 0) {
+				target.write(chunk, 0, n);
+			}
+		}
+
+		void finish() throws IOException {
+			deflater.finish();
+			while (!deflater.finished()) {
+				deflate();
+			}
+			if (crc != null) {
+				writeIntLE(crc.getValue());
+				writeIntLE(deflater.getBytesRead());
+			}
+		}
+
+		private void writeIntLE(long value) throws IOException {
+			target.write((int)value & 0xFF);
+			target.write((int)(value >> 8) & 0xFF);
+			target.write((int)(value >> 16) & 0xFF);
+			target.write((int)(value >> 24) & 0xFF);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			target.flush();
+		}
+	}
+}
@@ -15,17 +15,23 @@
  */
 package panama.core;
 
+import java.io.IOException;
 import java.lang.reflect.Array;
 import java.security.SecureRandom;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -53,11 +59,31 @@ public class Context {
 
 	/*
 	 * public wrappers for easier access and more readable code
+	 * (they access the session, application etc. only when used, so they are cheap to create)
 	 */
 	public SessionWrapper session = new SessionWrapper();
 	public ApplicationWrapper application = new ApplicationWrapper();
 	public TokenWrapper tokens = new TokenWrapper();
-	public ParamConvertUtil paramConvertUtil = new ParamConvertUtil();
+
+	/**
+	 * ParamConvertUtil of this context, null until {@link #getParamConvertUtil()} is called.
+	 * If set, it is used for all parameter conversions of this context instead of the cached {@link ParamConverter}s.
+	 * @deprecated use {@link #getParamConvertUtil()}, this is not created with the context any more
+	 */
+	@Deprecated
+	public ParamConvertUtil paramConvertUtil = null;
+
+	/**
+	 * Gets ParamConvertUtil of this context, to register additional converters for the parameters of the current request.
+	 * Once requested, it is used for all parameter conversions of this context instead of the cached {@link ParamConverter}s.
+	 * @return a ParamConvertUtil of this context only, created lazily
+	 */
+	public ParamConvertUtil getParamConvertUtil() {
+		if (paramConvertUtil == null) {
+			paramConvertUtil = new ParamConvertUtil();
+		}
+		return paramConvertUtil;
+	}
 
 	/*
 	 * getters for wrappers to have the same effect in velocity templates
@@ -88,19 +114,22 @@ public class Context {
 
 	private HttpServletRequest request;
 	private HttpMultipartServletRequest multipartRequest;
+	private MultipartStream multipartStream;
 	private HttpServletResponse response;
 
 	private Map parameterMap;
 	private Locale defaultLocale;	// locale as derived from supported languages and accepted languages from browser - this is the default as long as no setLocale() has set an explicit locale in the session.
+	private boolean stateless;		// if true, no session must be created
+	private List<Future<?>> backgroundTasks;	// tiles etc. started for this context, see Dispatcher.submitTile()
 
 	/**
 	 * Static creator - created Context is stored in threadlocal variable and
 	 * may be accessed via getInstance()
 	 * @param core Dispatcher
-	 * @param sess Session
+	 * @param sess Session or null to get (or create) it from the request when first needed
 	 * @param req Request
 	 * @param res Response
-	 * @param defaultLocale Locale derived vom supported and accepted locales (app res. browser)
+	 * @param defaultLocale Locale derived vom supported and accepted locales (app res. browser) or null to derive it when first needed
 	 * @return newly created instance.
 	 * @throws Exception if creating the hibernateSupportClass
 	 */
@@ -120,6 +149,80 @@ public class Context {
 		contextHolder.remove();
 	}
 
+	/**
+	 * Runs task with given context as current context of this thread, restoring the previous context afterwards.
+	 * Like a scoped value, the context is bound for the duration of the task only, so nothing is left behind in pooled or virtual threads.
+	 * @param ctx the context, may be null
+	 * @param task
+	 */
+	public static void runWith(Context ctx, Runnable task) {
+		Context previous = contextHolder.get();
+		contextHolder.set(ctx);
+		try {
+			task.run();
+		} finally {
+			restore(previous);
+		}
+	}
+
+	/**
+	 * Calls task with given context as current context of this thread, restoring the previous context afterwards.
+	 * @see #runWith(Context, Runnable)
+	 * @param ctx the context, may be null
+	 * @param task
+	 * @return result of the task
+	 * @throws Exception from the task
+	 */
+	public static <T> T callWith(Context ctx, Callable<T> task) throws Exception {
+		Context previous = contextHolder.get();
+		contextHolder.set(ctx);
+		try {
+			return task.call();
+		} finally {
+			restore(previous);
+		}
+	}
+
+	private static void restore(Context previous) {
+		if (previous != null) {
+			contextHolder.set(previous);
+		} else {
+			contextHolder.remove();
+		}
+	}
+
+	/**
+	 * Wraps task so it runs with the current context of this thread, whichever thread it is run by.
+	 * @param task
+	 * @return the wrapped task
+	 */
+	public static Runnable wrap(Runnable task) {
+		Context ctx = getInstance();
+		return () -> runWith(ctx, task);
+	}
+
+	/**
+	 * Wraps task so it is called with the current context of this thread, whichever thread it is called by.
+	 * @param task
+	 * @return the wrapped task
+	 */
+	public static <T> Callable<T> wrap(Callable<T> task) {
+		Context ctx = getInstance();
+		return () -> callWith(ctx, task);
+	}
+
+	/**
+	 * Wraps executor so tasks run with the context that was current when they were submitted, e.g.
+	 * <pre>
+	 * CompletableFuture.supplyAsync(() -&gt; slowQuery(), Context.propagating(executor))
+	 * </pre>
+	 * @param executor
+	 * @return the wrapping executor
+	 */
+	public static Executor propagating(Executor executor) {
+		return task -> executor.execute(wrap(task));
+	}
+
 	public Context() {
 	}
 
@@ -150,19 +253,91 @@ public class Context {
 	}
 	public void setRequest(HttpServletRequest request) {
 		this.request = request;
-		if (HttpMultipartServletRequest.isMultipartContent(request)) {
+		if (request instanceof HttpMultipartServletRequest) {
 			this.multipartRequest = (HttpMultipartServletRequest)request;
 		}
 	}
+	/**
+	 * Gets stream of the parts of a multipart request that was not parsed in advance, i.e. the action is annotated with <code>@Action(streamingUpload=true)</code>.
+	 * @return the stream, created on first call; null if the request is no multipart request or was parsed in advance
+	 * @throws IOException if the request cannot be read
+	 */
+	public MultipartStream getMultipartStream() throws IOException {
+		if (multipartStream == null && multipartRequest == null && HttpMultipartServletRequest.isMultipartContent(request)) {
+			multipartStream = new MultipartStream(request, core != null ? core.getMaxFileUploadSize() : -1);
+		}
+		return multipartStream;
+	}
 	public HttpServletResponse getResponse() {
 		return response;
 	}
 	public void setResponse(HttpServletResponse response) {
 		this.response = response;
 	}
+	/**
+	 * Gets the session, creating one if none exists yet (unless the context is stateless).
+	 * Sessions are created lazily, on the first write access. A session cannot be created once the response is committed,
+	 * so the Dispatcher creates it before rendering templates (of actions that are not stateless);
+	 * other targets that write into the session while writing their output must make sure it exists before.
+	 * @return the session; null only for stateless contexts without a session
+	 * @throws IllegalStateException if a session must be created but the response is already committed
+	 */
 	public HttpSession getHttpSession() {
+		if (httpSession == null && request != null) {
+			httpSession = request.getSession(!stateless);
+		}
 		return httpSession;
 	}
+
+	/**
+	 * Gets the session if there is one already, never creates one.
+	 * @return the session or null
+	 */
+	public HttpSession getExistingHttpSession() {
+		if (httpSession == null && request != null) {
+			httpSession = request.getSession(false);
+		}
+		return httpSession;
+	}
+
+	/**
+	 * Whether this context must not create a session, see {@link panama.annotations.Action#stateless()}
+	 */
+	public boolean isStateless() {
+		return stateless;
+	}
+
+	public void setStateless(boolean stateless) {
+		this.stateless = stateless;
+	}
+
+	/**
+	 * Registers task running in the background for this context.
+	 * @see #cancelBackgroundTasks()
+	 */
+	synchronized void addBackgroundTask(Future<?> task) {
+		if (backgroundTasks == null) {
+			backgroundTasks = new ArrayList<Future<?>>();
+		}
+		backgroundTasks.add(task);
+	}
+
+	/**
+	 * Cancels the tasks started in the background for this context (e.g. tiles), that are not done yet.
+	 * Called by the Dispatcher when the request ends, as the tasks must not outlive the request they belong to.
+	 */
+	public void cancelBackgroundTasks() {
+		List<Future<?>> tasks;
+		synchronized (this) {
+			tasks = backgroundTasks;
+			backgroundTasks = null;
+		}
+		if (tasks != null) {
+			for (Future<?> task : tasks) {
+				task.cancel(true);
+			}
+		}
+	}
 	public void setHttpSession(HttpSession session) {
 		this.httpSession = session;
 	}
@@ -179,6 +354,9 @@ public class Context {
 	public Locale getLocale() {
 		Locale locale = (Locale)session.get(LOCALE_KEY);
 		if (locale == null) {
+			if (defaultLocale == null && core != null && request != null) {
+				defaultLocale = core.computeDefaultLocale(core.supportedLanguages, request.getLocales());
+			}
 			locale = defaultLocale;
 		}
 		return locale;
@@ -375,11 +553,13 @@ public class Context {
 		if (type.isArray()) {
 			String[] paramValues = getParameterValues(key);
 			if (paramValues == null || paramValues.length == 0) return defaultValue;
-			return (T)paramConvertUtil.convert(paramValues, type);
+			if (paramConvertUtil != null) return (T)paramConvertUtil.convert(paramValues, type);
+			return (T)ParamConverter.forType(type).convert(paramValues);
 		} else {
 			String paramValue = getParameter(key);
 			if (paramValue == null) return defaultValue;
-			return (T)paramConvertUtil.convert(paramValue, type);
+			if (paramConvertUtil != null) return (T)paramConvertUtil.convert(paramValue, type);
+			return (T)ParamConverter.forType(type).convert(paramValue);
 		}
 	}
 
@@ -466,12 +646,28 @@ public class Context {
 
 	public class SessionWrapper {
 
+		/**
+		 * Gets value from session. Does not create a session.
+		 * @param key
+		 * @return the value or null if there is no such value or no session
+		 */
 		public Object get(String key) {
-			return httpSession.getAttribute(key);
+			HttpSession s = getExistingHttpSession();
+			return s != null ? s.getAttribute(key) : null;
 		}
 
+		/**
+		 * Puts value into session, creating the session if necessary.
+		 * @param key
+		 * @param value
+		 * @throws IllegalStateException if the context is stateless and there is no session
+		 */
 		public void put(String key, Object value) {
-			httpSession.setAttribute(key, value);
+			HttpSession s = getHttpSession();
+			if (s == null) {
+				throw new IllegalStateException("Cannot put '"+key+"' into session, action is stateless and no session exists.");
+			}
+			s.setAttribute(key, value);
 		}
 
 	}
@@ -484,7 +680,7 @@ public class Context {
 		 */
 		public void create(String name) {
 			String value = System.currentTimeMillis() + "." + SECURE_RANDOM_GENERATOR.nextLong();
-			getTokenValues().put(name, value);
+			getTokenValues(true).put(name, value);
 		}
 
 		/**
@@ -493,7 +689,8 @@ public class Context {
 		 * @return value of token 'name' or null.
 		 */
 		public String get(String name) {
-			return getTokenValues().get(name);
+			Map<String, String> values = getTokenValues(false);
+			return values != null ? values.get(name) : null;
 		}
 
 		/**
@@ -512,13 +709,16 @@ public class Context {
 		 * @param name name of token
 		 */
 		public void invalidate(String name) {
-			getTokenValues().remove(name);
+			Map<String, String> values = getTokenValues(false);
+			if (values != null) {
+				values.remove(name);
+			}
 		}
 
 		@SuppressWarnings("unchecked")
-		private Map<String, String> getTokenValues() {
+		private Map<String, String> getTokenValues(boolean create) {
 			Map<String, String> values = (Map<String, String>)session.get(TOKEN_VALUE_KEY);
-			if (values == null) {
+			if (values == null && create) {
 				values = new HashMap<String, String>();
 				session.put(TOKEN_VALUE_KEY, values);
 			}
@@ -20,18 +20,41 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Arrays;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -41,9 +64,9 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.http.HttpSession;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.velocity.Template;
 import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.tools.view.ViewToolManager;
 import org.avaje.agentloader.AgentLoader;
@@ -53,6 +76,7 @@ import org.scannotation.WarUrlFinder;
 import com.avaje.ebeaninternal.server.lib.ShutdownManager;
 
 import panama.annotations.Action;
+import panama.annotations.Cached;
 import panama.annotations.ContextParam;
 import panama.annotations.Controller;
 import panama.exceptions.ForceTargetException;
@@ -61,7 +85,6 @@ import panama.exceptions.NoSuchActionException;
 import panama.log.SimpleLogger;
 import panama.util.Configuration;
 import panama.util.DynaBeanUtils;
-import panama.util.TestTimer;
 
 
 /**
@@ -77,7 +100,43 @@ public class Dispatcher implements Filter {
 	public final static String APP_NAME_KEY = PREFIX+"_application_name";
 
 	public final static String PARAM_LANGUAGES = PREFIX+".languages";
+	/* max. size in MB of multipart requests, defaults to 1 */
 	public final static String PARAM_MAXFILEUPLOADSIZE = PREFIX+".maxfileuploadsize";
+	/* production mode: precompiled and cached templates, production velocity fallback properties */
+	public final static String PARAM_PRODUCTION = PREFIX+".production";
+	public final static String PARAM_TEMPLATECACHE_SIZE = PREFIX+".templatecache.size";
+	public final static String PARAM_TEMPLATECACHE_CHECKINTERVAL = PREFIX+".templatecache.checkinterval";
+	/* max. size in KB of rendered templates to buffer (and send with Content-Length), larger ones are streamed; 0 to disable buffering */
+	public final static String PARAM_OUTPUTBUFFER_SIZE = PREFIX+".outputbuffer.size";
+	/* compression of template, json and plain text output as negotiated by the Accept-Encoding header */
+	public final static String PARAM_COMPRESSION = PREFIX+".compression";
+	/* min. size in bytes of output to compress, defaults to 1024 */
+	public final static String PARAM_COMPRESSION_MINSIZE = PREFIX+".compression.minsize";
+	/* compression level from 1 (fastest) to 9 (best compression), defaults to 6 */
+	public final static String PARAM_COMPRESSION_LEVEL = PREFIX+".compression.level";
+	/* max. total size in KB of responses cached for actions annotated with @Cached, defaults to 10240 */
+	public final static String PARAM_RESPONSECACHE_SIZE = PREFIX+".responsecache.size";
+	/* max. number of tiles rendered concurrently in the background (see TileTool.async()), defaults to 16 */
+	public final static String PARAM_TILES_THREADS = PREFIX+".tiles.threads";
+	/* default time in ms to wait for a tile rendered in the background, defaults to 5000 */
+	public final static String PARAM_TILES_TIMEOUT = PREFIX+".tiles.timeout";
+	/* default time in ms to wait for the target of an AsyncTarget, defaults to 30000 */
+	public final static String PARAM_ASYNC_TIMEOUT = PREFIX+".async.timeout";
+	/* fraction of requests to trace, from 0 (none, the default) to 1 (all) */
+	public final static String PARAM_TRACING_SAMPLERATE = PREFIX+".tracing.samplerate";
+	/* min. duration in ms of traced requests to keep for viewing via system/traces, defaults to 1000 */
+	public final static String PARAM_TRACING_SLOW = PREFIX+".tracing.slow";
+	/* number of slow traces to keep, defaults to 50 */
+	public final static String PARAM_TRACING_BUFFER = PREFIX+".tracing.buffer";
+	/* min. number of rows of in-memory tables (DefaultTable) to filter and sort in parallel, 0 to never, defaults to 10000 */
+	public final static String PARAM_TABLE_PARALLELTHRESHOLD = PREFIX+".table.parallelthreshold";
+	/* enables system/metrics, system/prometheus, system/traces and system/diagnostics, which reveal internals of the application; defaults to false */
+	public final static String PARAM_SYSTEM_DIAGNOSTICS = PREFIX+".system.diagnostics";
+
+	/* value of Cached.varyBy() standing for the locale of the context */
+	public final static String VARY_BY_LOCALE = "locale";
+
+	private final static String TEMPLATE_SUFFIX = ".vm";
 
 	private static final String SYSTEM_PROPERTY_VELOCITY_PROPS_SUFFIX = ".velocity.configuration";
 
@@ -88,6 +147,9 @@ public class Dispatcher implements Filter {
 	public final static String CONTEXT_KEY = "context";
 	public final static String ACTION_INVOCATION_MODE_KEY = PREFIX+"action_invocation_mode";
 
+	/* key for route resolved in doFilter(), only lives until handleRequest() picks it up */
+	private final static String ROUTE_KEY = PREFIX+"_route";
+
 	/* values for ACTION_INVOCATION_MODE_KEY */
 	public final static String ACTION_INVOCATION_PROGRAMATICALLY = "programatically";
 	public final static String ACTION_INVOCATION_BY_URL = "by_url";
@@ -97,6 +159,9 @@ public class Dispatcher implements Filter {
 	private final static int CAN_HANDLE_REQUEST_REDIRECT = 2;
 	private final static int CAN_HANDLE_REQUEST_REDIRECT_TO_DEFAULT_CONTROLLER = 3;
 
+	/** Max. number of idle instances per thread of a controller with scope POOLED */
+	private final static int MAX_POOLED_CONTROLLERS_PER_THREAD = 4;
+
 	/** Simply! Logging */
 	protected static SimpleLogger log = new SimpleLogger(Dispatcher.class);
 
@@ -108,13 +173,23 @@ public class Dispatcher implements Filter {
 		class Parameter {
 			Class<?> type;
 			String contextParamName;
+			ParamConverter converter;
 		}
 
 		Method method;
 		Parameter[] parameters;
+		ActionInvoker invoker;
+		boolean stateless;
+		boolean streamingUpload;
+		Cached cached;
+		Metrics.ActionMetrics metrics;
 
 		public ActionInfo(Method method) {
 			this.method = method;
+			Action action = method.getAnnotation(Action.class);
+			stateless = action != null && action.stateless();
+			streamingUpload = action != null && action.streamingUpload();
+			cached = method.getAnnotation(Cached.class);
 			Class<?>[] parameterTypes = method.getParameterTypes(); // never null
 			Annotation[][] annotations = method.getParameterAnnotations(); // never null
 			parameters = new Parameter[parameterTypes.length];
@@ -122,6 +197,7 @@ public class Dispatcher implements Filter {
 				Parameter arg = new Parameter();
 				arg.type = parameterTypes[i];
 				arg.contextParamName = getContextParamAnnotationValue(annotations[i]);
+				arg.converter = ParamConverter.forType(arg.type);
 				parameters[i] = arg;
 			}
 		}
@@ -147,12 +223,45 @@ public class Dispatcher implements Filter {
 	class ControllerInfo {
 		Class<? extends BaseController> controllerClass;
 		String defaultActionName;
+		Controller.Scope scope;
+		/** The instance for scope SINGLETON */
+		BaseController singleton;
+		/**
+		 * Idle instances for scope POOLED.
+		 * The ThreadLocal is never removed, so the container's threads keep the idle instances (and their classes) reachable even after undeploy.
+		 */
+		ThreadLocal<ArrayDeque<BaseController>> pool;
 		Map<String, ActionInfo> actions = new HashMap<>();
+		/** Route to default action, null if controller has no default action */
+		Route defaultRoute;
+		/** Mapping action names and aliases to routes; built once in collectActions() */
+		RouteTrie<Route> routes;
+	}
+
+	/**
+	 * Result of resolving a path: the controller and action to invoke.
+	 * Routes are created once at startup and shared by all requests.
+	 */
+	class Route {
+		final ControllerInfo controllerInfo;
+		final ActionInfo actionInfo;	// may be null if a default action does not exist
+		final String actionName;
+		final boolean isDefault;
+
+		Route(ControllerInfo controllerInfo, ActionInfo actionInfo, String actionName, boolean isDefault) {
+			this.controllerInfo = controllerInfo;
+			this.actionInfo = actionInfo;
+			this.actionName = actionName;
+			this.isDefault = isDefault;
+		}
 	}
 
 	/** Mapping controller alias and FQCN to same ControllerInfo instance; filled in init(), later on only read from */
 	private Map<String, ControllerInfo> controllers = new HashMap<>();
 
+	/** Same as controllers (without default controller key) but as trie for fast lookups by path */
+	private RouteTrie<ControllerInfo> controllerRoutes = new RouteTrie<>(new HashMap<String, ControllerInfo>());
+
 	/** Configuration (from FilterConfig.InitParameters) */
 	private Map<String, String> initParams = new HashMap<String, String>();
 
@@ -161,10 +270,19 @@ public class Dispatcher implements Filter {
 
 	/** Multilanguage support */
 	protected List<String> supportedLanguages = null;
+	private Set<String> supportedLanguageSet = null;
+	private Locale fallbackLocale = null;
 
 	/** Velocity */
 	private VelocityEngine velocityEngine;
 	private ViewToolManager velocityToolManager;
+	private TemplateCache templateCache;	// only in production mode
+	private ResponseCache responseCache;
+	private volatile Settings settings = Settings.DEFAULTS;
+	private final Metrics metrics = new Metrics();
+	private Tracer tracer = new Tracer(Settings.DEFAULTS.getTracingBuffer());
+	private ExecutorService tileExecutor;	// created when first needed
+	private Semaphore tilePermits;
 
 	/** Startup time */
 	private Date startupAt = new Date();
@@ -189,14 +307,16 @@ public class Dispatcher implements Filter {
 			String key = (String)names.nextElement();
 			initParams.put(key, filterConfig.getInitParameter(key));
 		}
+		settings = new Settings(initParams, Configuration.getAll());
 
 		/* init velocity
 		 * name of properties file is determined from
 		 * a) System Property <contextname>.velocity.configuration
 		 * b) System Property <PREFIX>.velocity.configuration
 		 * c) velocity.properties
-		 * d) default-fallback-velocity.properties
+		 * d) default-fallback-velocity-production.properties in production mode, default-fallback-velocity.properties otherwise
 		 */
+		boolean production = settings.isProduction();
 		try {
 			ClassLoader cl = this.getClass().getClassLoader();
 			Properties velocityProperties = Dispatcher.readProperties(
@@ -205,9 +325,12 @@ public class Dispatcher implements Filter {
 					"/velocity.properties");
 			if (velocityProperties.isEmpty()) {
 				velocityProperties = new Properties();
-				velocityProperties.load(cl.getResourceAsStream("default-fallback-velocity.properties"));
+				velocityProperties.load(cl.getResourceAsStream(production ? "default-fallback-velocity-production.properties" : "default-fallback-velocity.properties"));
 			}
 			velocityEngine = new VelocityEngine(velocityProperties);
+			if (production) {
+				templateCache = new TemplateCache(velocityEngine, settings.getTemplateCacheSize(), settings.getTemplateCacheCheckInterval());
+			}
 			/* init velocity tool manager -- automatically finds all default-tools, the framework's tools as defined in tools.xml and all tools of the web-app specified in tools.xml at classpath-root. */
 			velocityToolManager = new ViewToolManager(applicationContext, false, false);
 			velocityToolManager.setVelocityEngine(velocityEngine);
@@ -216,18 +339,12 @@ public class Dispatcher implements Filter {
 			log.fatal("velocity init failed!");
 			log.fatalException(e);
 		}
+		responseCache = new ResponseCache(settings.getResponseCacheSize());
+		tracer = new Tracer(settings.getTracingBuffer());
 
-		String languages = getInitParam(PARAM_LANGUAGES);
-		String[] supported;
-		if (languages == null) {
-			supported = new String[]{"en"};
-		} else {
-			supported = languages.split("\\s*,\\s*");
-			if (supported == null || supported.length == 0) {
-				supported = new String[]{"en"};
-			}
-		}
-		supportedLanguages = Arrays.asList(supported);
+		supportedLanguages = settings.getLanguages();
+		supportedLanguageSet = new HashSet<String>(supportedLanguages);
+		fallbackLocale = new Locale(supportedLanguages.get(0));
 
 		try {
 			collectControllers();
@@ -235,6 +352,69 @@ public class Dispatcher implements Filter {
 			log.error("Collecting Controllers and Actions failed.");
 			log.errorException(e);
 		}
+
+		if (templateCache != null) {
+			precompileTemplates();
+		}
+	}
+
+	/**
+	 * Parses all templates found in the packages (and sub-packages) of the controllers and puts them into the template cache.
+	 */
+	private void precompileTemplates() {
+		long start = System.nanoTime();
+		Set<String> names = new TreeSet<String>();
+		try {
+			Set<String> packages = new HashSet<String>();
+			for (ControllerInfo controllerInfo : controllers.values()) {
+				Package p = controllerInfo.controllerClass.getPackage();
+				packages.add(p == null ? "" : p.getName().replace('.', '/') + "/");
+			}
+			URL classes = WarUrlFinder.findWebInfClassesPath(applicationContext);
+			if (classes != null) {
+				findTemplates(new File(classes.toURI()), packages, names);
+			}
+			URL[] libs = WarUrlFinder.findWebInfLibClasspaths(applicationContext);
+			for (URL lib : libs != null ? libs : new URL[0]) {
+				findTemplates(new File(lib.toURI()), packages, names);
+			}
+		} catch (Exception e) {
+			log.warn("Searching templates failed: "+e.getMessage());
+		}
+		int count = templateCache.precompile(names);
+		log.info("Precompiled "+count+" of "+names.size()+" templates in "+((System.nanoTime() - start) / 1000000)+" ms ("
+				+(templateCache.getParseTimeNanos() / 1000000)+" ms parsing).");
+	}
+
+	/**
+	 * Adds names of all templates in given directory or jar file, that are within one of given packages, to names.
+	 * Names are absolute paths like used by {@link TemplateTarget}.
+	 */
+	private void findTemplates(File file, Set<String> packages, Set<String> names) throws IOException {
+		if (file.isDirectory()) {
+			Path root = file.toPath();
+			try (Stream<Path> paths = Files.walk(root)) {
+				for (Path path : (Iterable<Path>)paths::iterator) {
+					addTemplateName(root.relativize(path).toString().replace(File.separatorChar, '/'), packages, names);
+				}
+			}
+		} else if (file.isFile()) {
+			try (JarFile jar = new JarFile(file)) {
+				for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+					addTemplateName(entries.nextElement().getName(), packages, names);
+				}
+			}
+		}
+	}
+
+	private void addTemplateName(String path, Set<String> packages, Set<String> names) {
+		if (!path.endsWith(TEMPLATE_SUFFIX)) return;
+		for (String p : packages) {
+			if (path.startsWith(p)) {
+				names.add("/" + path);
+				return;
+			}
+		}
 	}
 
 	/**
@@ -294,6 +474,8 @@ public class Dispatcher implements Filter {
 	 *
 	 * @param req
 	 * @param res
+	 * If the request can be handled, the resolved route is put into the request, so handleRequest() need not resolve it again.
+	 *
 	 * @return whether we can handle this request, a redirect is required or it should be passed along the filter chain.
 	 */
 	private int canHandleRequest(ServletRequest req, ServletResponse res) {
@@ -304,27 +486,67 @@ public class Dispatcher implements Filter {
 		if ((path == null || path.length() == 0 || path.equals("/")) && controllers.containsKey(DEFAULT_CONTROLLER_KEY)) {
 			return CAN_HANDLE_REQUEST_REDIRECT_TO_DEFAULT_CONTROLLER;
 		}
-		int result = CAN_HANDLE_REQUEST_NO;
-		String[] ca = extractControllerAndActionNames(path);
-		String ctrlName = ca[0];
-		String actionName = ca[1];
-		ControllerInfo controllerInfo = controllers.get(ctrlName);
-		if (controllerInfo == null) {
-			result = CAN_HANDLE_REQUEST_NO;
+		Route route = resolveRoute(path);
+		if (route == null) {
+			return CAN_HANDLE_REQUEST_NO;
+		}
+		if (route.isDefault && !endsWithSlash(path)) {
+			return CAN_HANDLE_REQUEST_REDIRECT;
+		}
+		req.setAttribute(ROUTE_KEY, route);
+		return CAN_HANDLE_REQUEST_YES;
+	}
+
+	/**
+	 * Resolves controller and action for given path.
+	 * The path is supposed to look like that:
+	 * [/.../]&lt;controller name or alias&gt;[/&lt;action name or alias&gt;]
+	 * If no action part is found, the route to the default action of the controller is returned.
+	 *
+	 * @param path
+	 * @return a Route or null if the path specifies no existing controller or action.
+	 */
+	private Route resolveRoute(String path) {
+		if (path == null) {
+			return null;
+		}
+		int len = path.length();
+		int start = 0;
+		while (start < len && path.charAt(start) == '/') {	// skip leading slashs
+			start++;
+		}
+		if (start == len) {
+			return null;
+		}
+		int divider = path.lastIndexOf('/');
+		ControllerInfo controllerInfo;
+		int actionStart = len;
+		int actionEnd = len;
+		if (divider < start) {
+			controllerInfo = controllerRoutes.get(path, start, len);
 		} else {
-			if (StringUtils.isEmpty(actionName)) {
-				if (StringUtils.isEmpty(controllerInfo.defaultActionName)) {
-					result = CAN_HANDLE_REQUEST_NO;
-				} else if (path.trim().endsWith("/")) {
-					result = CAN_HANDLE_REQUEST_YES;
-				} else {
-					result = CAN_HANDLE_REQUEST_REDIRECT;
-				}
-			} else {
-				result = controllerInfo.actions.containsKey(actionName) ? CAN_HANDLE_REQUEST_YES : CAN_HANDLE_REQUEST_NO;
-			}
+			int ctrlEnd = divider;
+			while (start < ctrlEnd && path.charAt(start) <= ' ') start++;				// trim
+			while (ctrlEnd > start && path.charAt(ctrlEnd - 1) <= ' ') ctrlEnd--;
+			controllerInfo = controllerRoutes.get(path, start, ctrlEnd);
+			actionStart = divider + 1;
+			while (actionStart < actionEnd && path.charAt(actionStart) <= ' ') actionStart++;
+			while (actionEnd > actionStart && path.charAt(actionEnd - 1) <= ' ') actionEnd--;
+		}
+		if (controllerInfo == null) {
+			return null;
 		}
-		return result;
+		if (actionStart == actionEnd) {
+			return controllerInfo.defaultRoute;
+		}
+		return controllerInfo.routes.get(path, actionStart, actionEnd);
+	}
+
+	/** same as path.trim().endsWith("/") */
+	private boolean endsWithSlash(String path) {
+		int i = path.length() - 1;
+		while (i >= 0 && path.charAt(i) <= ' ') i--;
+		return i >= 0 && path.charAt(i) == '/';
 	}
 
 	/**
@@ -335,41 +557,216 @@ public class Dispatcher implements Filter {
 	public void handleRequest(HttpServletRequest req, HttpServletResponse res) {
 
 		Context ctx = null;
+		Metrics.ActionMetrics actionMetrics = metrics.getUnmatched();
+		boolean async = false;
+		Settings settings = this.settings;
+		Tracer.Span trace = tracer.startTrace("request", req.getServletPath(), settings.getTracingSampleRate(), settings.getTracingSlow());
 		try {
 			log.debug("about to handle request "+req.getServletPath());
-			/* Convert to multipart request if it has multipart content (fileuploads). */
-			if (HttpMultipartServletRequest.isMultipartContent(req)) {
-				/* maxFileSize is defined in mega-bytes */
-				int maxFileSize = 1024 * 1024 * (new Integer(getInitParam(PARAM_MAXFILEUPLOADSIZE, "1")).intValue());
-				HttpMultipartServletRequest mreq = new HttpMultipartServletRequest(req, maxFileSize, -1);
+			Route route = (Route)req.getAttribute(ROUTE_KEY);											// resolved by canHandleRequest()
+			if (route != null) {
+				req.removeAttribute(ROUTE_KEY);
+			} else {
+				route = resolveRoute(req.getServletPath());
+			}
+			actionMetrics = metricsOf(route);
+			actionMetrics.begin();
+			/* Convert to multipart request if it has multipart content (fileuploads), unless the action streams the parts itself. */
+			if (HttpMultipartServletRequest.isMultipartContent(req) && !(route != null && route.actionInfo != null && route.actionInfo.streamingUpload)) {
+				HttpMultipartServletRequest mreq = new HttpMultipartServletRequest(req, (int)getMaxFileUploadSize(), -1);
 				req = mreq;
 			}
 			req.setCharacterEncoding("UTF-8");															// must set this before getParameter() to get the correct encoding
-			/* create a context for the controller */
-			HttpSession session = req.getSession(true);													// get session, create one if none exists
-			Locale defaultLocale = computeDefaultLocale(supportedLanguages, req.getLocales());
-			ctx = Context.createInstance(this, session, req, res, defaultLocale); 						// create context instance
+			/* create a context for the controller -- session and locale are determined lazily by the context */
+			ctx = Context.createInstance(this, null, req, res, null); 									// create context instance
 			ctx.put(CONTEXT_KEY, ctx);																	// put context into itself - some tools may need a context passed to them
-			Target target = handleAction(ctx, req.getServletPath(), ACTION_INVOCATION_BY_URL);
-			if (target != null) {
+			if (route != null && route.actionInfo != null && route.actionInfo.stateless) {
+				ctx.setStateless(true);
+			}
+			if (route != null && route.actionInfo != null && route.actionInfo.cached != null && responseCache != null
+					&& ("GET".equals(req.getMethod()) || "HEAD".equals(req.getMethod()))) {
+				handleCachedRequest(ctx, route, req, res);
+				return;
+			}
+			Target target = handleAction(ctx, route, req.getServletPath(), ACTION_INVOCATION_BY_URL);
+			if (target instanceof AsyncTarget && req.isAsyncSupported()) {
+				trace.detach();		// continued and closed by goAsync() on the thread completing the target
+				goAsync(ctx, (AsyncTarget)target, actionMetrics, trace);
+				async = true;
+			} else if (target != null) {
 				log.debug("about to go to target "+target);
-				TestTimer targetTimer = new TestTimer("target");
-				target.go();
-				targetTimer.done();
+				createSessionForTemplate(ctx, target);
+				long start = System.nanoTime();
+				Tracer.Span span = Tracer.span("render", target.getClass().getName());
+				try {
+					target.go();
+				} finally {
+					span.close();
+				}
+				actionMetrics.getRender().record(System.nanoTime() - start);
 				log.debug("returned from target");
 			}
 		} catch (Throwable e) {	// catch all sorts of exceptions
 			log.fatalException(e);
+			actionMetrics.recordError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 			try {
 				res.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 			} catch (IOException e1) {
 				log.fatalException(e);
 			}
 		} finally {
+			if (!async) {
+				actionMetrics.end();
+				if (ctx != null) {
+					ctx.cancelBackgroundTasks();
+				}
+			}
+			if (!async) {
+				trace.close();
+			}
 			Context.destroyInstance();
 		}
 	}
 
+	/**
+	 * Creates the session before a template is rendered (unless the action is stateless), as templates may write into it
+	 * (e.g. $tokens) after the response was committed, when a session can no longer be created.
+	 * Other targets (json, plain text, ...) do not get a session unless the action creates one.
+	 */
+	private void createSessionForTemplate(Context ctx, Target target) {
+		if (target instanceof TemplateTarget && !ctx.isStateless()) {
+			ctx.getHttpSession();
+		}
+	}
+
+	/** @return metrics of the action of given route, or those of unmatched requests */
+	private Metrics.ActionMetrics metricsOf(Route route) {
+		return route != null && route.actionInfo != null ? route.actionInfo.metrics : metrics.getUnmatched();
+	}
+
+	/** States of a request waiting for an AsyncTarget; only one of the completion and the timeout may write the response */
+	private enum AsyncState { WAITING, RENDERING, DONE }
+
+	/**
+	 * Goes to the target of an AsyncTarget when its stage completes, using the servlet async API so the container thread is released meanwhile.
+	 * The target is rendered on the thread completing the stage, with the context set as current context.
+	 * If it does not complete in time, 503 (Service Unavailable) is sent.
+	 * If the timeout occurs while the target is being rendered, the container thread waits for the rendering to complete the response.
+	 * The trace of the request, detached from the container thread, is continued when rendering and closed when done.
+	 */
+	private void goAsync(Context ctx, AsyncTarget target, Metrics.ActionMetrics actionMetrics, Tracer.Span trace) {
+		HttpServletResponse res = ctx.getResponse();
+		AsyncContext async = ctx.getRequest().startAsync();
+		AtomicReference<AsyncState> state = new AtomicReference<AsyncState>(AsyncState.WAITING);
+		CountDownLatch rendered = new CountDownLatch(1);
+		async.setTimeout(target.getTimeout() > 0 ? target.getTimeout() : getAsyncTimeout());
+		async.addListener(new AsyncListener() {
+			@Override
+			public void onTimeout(AsyncEvent event) throws IOException {
+				if (state.compareAndSet(AsyncState.WAITING, AsyncState.DONE)) {
+					log.warn("async target of "+ctx.getRequest().getServletPath()+" timed out");
+					actionMetrics.recordError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+					actionMetrics.end();
+					ctx.cancelBackgroundTasks();
+					trace.close();
+					res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+					async.complete();
+				} else {
+					// the target is being rendered, the container must not complete the response meanwhile
+					try {
+						rendered.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+			@Override
+			public void onError(AsyncEvent event) {
+				if (state.compareAndSet(AsyncState.WAITING, AsyncState.DONE)) {
+					actionMetrics.end();
+					trace.close();
+				}
+			}
+			@Override
+			public void onStartAsync(AsyncEvent event) {
+			}
+			@Override
+			public void onComplete(AsyncEvent event) {
+			}
+		});
+		target.getStage().whenComplete((completed, error) -> {
+			if (!state.compareAndSet(AsyncState.WAITING, AsyncState.RENDERING)) {
+				return;		// timed out or failed already
+			}
+			Context.runWith(ctx, () -> {
+				try {
+					if (error != null) {
+						throw error;
+					}
+					if (completed != null) {
+						createSessionForTemplate(ctx, completed);
+						long start = System.nanoTime();
+						Tracer.Span span = Tracer.span(trace, "render", completed.getClass().getName());
+						try {
+							completed.go();
+						} finally {
+							span.close();
+						}
+						actionMetrics.getRender().record(System.nanoTime() - start);
+					}
+				} catch (Throwable e) {
+					log.fatalException(e);
+					actionMetrics.recordError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+					try {
+						res.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+					} catch (Exception e1) {
+						log.fatalException(e1);
+					}
+				} finally {
+					actionMetrics.end();
+					ctx.cancelBackgroundTasks();
+					trace.close();
+					state.set(AsyncState.DONE);
+					try {
+						async.complete();
+					} finally {
+						rendered.countDown();
+					}
+				}
+			});
+		});
+	}
+
+	/**
+	 * Serves request for an action annotated with {@link Cached} from the response cache.
+	 * On a miss, the action is executed and its target rendered into a {@link ResponseCache.CapturingResponse}.
+	 */
+	private void handleCachedRequest(Context ctx, Route route, HttpServletRequest req, HttpServletResponse res) throws Exception {
+		Cached cached = route.actionInfo.cached;
+		String[] varyBy = cached.varyBy();
+		String[] values = new String[varyBy.length];
+		for (int i = 0; i < varyBy.length; i++) {
+			values[i] = VARY_BY_LOCALE.equals(varyBy[i]) ? ctx.getLocale().toString() : req.getParameter(varyBy[i]);
+		}
+		String encoding = settings.isCompression() ? Target.negotiateEncoding(req.getHeader("Accept-Encoding")) : null;
+		ResponseCache.Key key = new ResponseCache.Key(route.controllerInfo.controllerClass, route.actionInfo.method.getName(), varyBy, values, encoding);
+		String path = req.getServletPath();
+		ResponseCache.CachedResponse response = responseCache.get(key, cached.ttl(), () -> {
+			ResponseCache.CapturingResponse capture = new ResponseCache.CapturingResponse(res);
+			ctx.setResponse(capture);
+			try {
+				Target target = handleAction(ctx, route, path, ACTION_INVOCATION_BY_URL);
+				if (target != null) {
+					target.go();
+				}
+			} finally {
+				ctx.setResponse(res);
+			}
+			return capture.getCaptured();
+		});
+		response.writeTo(req, res);
+	}
+
 	/**
 	 * Scan WEB-INF/lib and WEB-INF/classes for Controller classes and puts all in controllerClasses map.
 	 * @throws IOException
@@ -386,22 +783,39 @@ public class Dispatcher implements Filter {
 
 		Set<String> ctrls = adb.getAnnotationIndex().get(Controller.class.getName());
 
+		List<Class<? extends BaseController>> classes = new ArrayList<>();
 		for (String fqcn : ctrls) {
-			Class<? extends BaseController> clazz = null;
 			try {
-				clazz = (Class<? extends BaseController>) Class.forName(fqcn);
+				classes.add((Class<? extends BaseController>) Class.forName(fqcn));
 			} catch (Exception e) {
 				log.warn("Class "+fqcn+" not found or not derived from Controller class. Ignoring it.");
-				continue;
 			}
+		}
+		addControllers(classes);
+	}
+
+	/**
+	 * Registers given controller classes, as done in init() for all classes annotated with {@link Controller}.
+	 * Classes without that annotation are ignored. Must not be called while requests are handled.
+	 *
+	 * @param classes
+	 */
+	protected void addControllers(Collection<Class<? extends BaseController>> classes) {
+		for (Class<? extends BaseController> clazz : classes) {
 			Controller controllerAnnotation = clazz.getAnnotation(Controller.class);
+			if (controllerAnnotation == null) {
+				log.warn("Class "+clazz.getName()+" is not annotated with @Controller. Ignoring it.");
+				continue;
+			}
+			String fqcn = clazz.getName();
 
 			ControllerInfo controllerInfo = new ControllerInfo();
 			controllerInfo.controllerClass = clazz;
 			controllerInfo.defaultActionName = controllerAnnotation.defaultAction();
+			initScope(controllerInfo, controllerAnnotation.scope());
 
 			controllers.put(fqcn, controllerInfo);
-			boolean isDefaultController = clazz.getAnnotation(Controller.class).isDefaultController();
+			boolean isDefaultController = controllerAnnotation.isDefaultController();
 			if (isDefaultController) {
 				controllers.put(DEFAULT_CONTROLLER_KEY, controllerInfo);
 			}
@@ -424,6 +838,43 @@ public class Dispatcher implements Filter {
 
 			collectActions(controllerInfo);
 		}
+
+		Map<String, ControllerInfo> routes = new HashMap<>(controllers);
+		routes.remove(DEFAULT_CONTROLLER_KEY);
+		controllerRoutes = new RouteTrie<>(routes);
+	}
+
+	/**
+	 * Sets up controllerInfo for given scope, creating the instance for singletons right away.
+	 * If that fails, the controller falls back to scope PER_REQUEST.
+	 *
+	 * @param controllerInfo
+	 * @param scope
+	 */
+	private void initScope(final ControllerInfo controllerInfo, Controller.Scope scope) {
+		controllerInfo.scope = scope;
+		switch (scope) {
+			case SINGLETON:
+				try {
+					controllerInfo.singleton = createController(controllerInfo);
+					controllerInfo.singleton.context = null;	// must use getContext()
+				} catch (RuntimeException e) {
+					log.error("Could not create singleton of "+controllerInfo.controllerClass.getName()+". Using scope "+Controller.Scope.PER_REQUEST+" instead.");
+					log.errorException(e);
+					controllerInfo.scope = Controller.Scope.PER_REQUEST;
+				}
+				break;
+			case POOLED:
+				controllerInfo.pool = new ThreadLocal<ArrayDeque<BaseController>>() {
+					@Override
+					protected ArrayDeque<BaseController> initialValue() {
+						return new ArrayDeque<BaseController>(MAX_POOLED_CONTROLLERS_PER_THREAD);
+					}
+				};
+				break;
+			default:
+				break;
+		}
 	}
 
 	/**
@@ -440,7 +891,9 @@ public class Dispatcher implements Filter {
 				while (returnType != null) {
 					if (returnType.equals(Target.class)) {
 						ActionInfo actionInfo = new ActionInfo(method);
+						actionInfo.invoker = createActionInvoker(method);
 						String methodName = method.getName();
+						actionInfo.metrics = metrics.forAction(controllerInfo.controllerClass.getName()+"."+methodName);
 						controllerInfo.actions.put(methodName, actionInfo);
 						String alias = method.getAnnotation(Action.class).alias();
 						if (!StringUtils.isEmpty(alias)) {
@@ -464,9 +917,29 @@ public class Dispatcher implements Filter {
 				}
 			}
 		}
+
+		Map<String, Route> routes = new HashMap<>();
+		for (Map.Entry<String, ActionInfo> e : controllerInfo.actions.entrySet()) {
+			routes.put(e.getKey(), new Route(controllerInfo, e.getValue(), e.getKey(), false));
+		}
+		controllerInfo.routes = new RouteTrie<>(routes);
+		if (!StringUtils.isEmpty(defaultActionName)) {
+			controllerInfo.defaultRoute = new Route(controllerInfo, controllerInfo.actions.get(defaultActionName), defaultActionName, true);
+		}
 	}
 
 
+	/**
+	 * Called from collectActions(), creates the invoker used to invoke given action method.
+	 * The default implementation uses method handles and falls back to reflection if necessary, but you can override this.
+	 *
+	 * @param method an action method
+	 * @return an ActionInvoker
+	 */
+	protected ActionInvoker createActionInvoker(Method method) {
+		return ActionInvoker.create(method);
+	}
+
 	/**
 	 * Creates a new instance for the controller specified by nameOrAlias
 	 *
@@ -474,21 +947,27 @@ public class Dispatcher implements Filter {
 	 * @return Controller object or null
 	 */
 	public BaseController getController(String nameOrAlias) {
-		BaseController ctrl = null;
 		ControllerInfo controllerInfo = controllers.get(nameOrAlias);
 
 		if (controllerInfo == null) {
 			throw new RuntimeException("No controller class found for name or alias '"+nameOrAlias+"'");
-		} else {
-			try {
-				ctrl = controllerInfo.controllerClass.getDeclaredConstructor().newInstance();
-			} catch (Exception e) {
-				throw new RuntimeException("Error creating instance of controller class "
-						+ controllerInfo.controllerClass.getName(),
-						e);
-			}
 		}
-		return ctrl;
+		return createController(controllerInfo);
+	}
+
+	/**
+	 * Creates a new instance of the controller class of given controllerInfo.
+	 * @param controllerInfo
+	 * @return Controller object
+	 */
+	private BaseController createController(ControllerInfo controllerInfo) {
+		try {
+			return controllerInfo.controllerClass.getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException("Error creating instance of controller class "
+					+ controllerInfo.controllerClass.getName(),
+					e);
+		}
 	}
 
 	/**
@@ -503,57 +982,53 @@ public class Dispatcher implements Filter {
 	 * @throws IOException
 	 */
 	protected Target handleAction(Context ctx, String path, String invocationMode) throws IOException {
+		return handleAction(ctx, resolveRoute(path), path, invocationMode);
+	}
+
+	/**
+	 * Executes action of given route.
+	 * @param ctx A context
+	 * @param route The resolved route or null if path could not be resolved
+	 * @param path The path the route was resolved from (for logging)
+	 * @param invocationMode One of ACTION_INVOKATION_XXX
+	 * @return The target returned by the action or some error target in case of an error.
+	 * @throws IOException
+	 */
+	private Target handleAction(Context ctx, Route route, String path, String invocationMode) throws IOException {
 
 		/* put invokation mode in request context */
 		ctx.put(ACTION_INVOCATION_MODE_KEY, invocationMode);
 
-		String[] ca = extractControllerAndActionNames(path);
-		String ctrlName = ca[0];
-		String actionName = ca[1];
-
-		TestTimer timer = new TestTimer("execute");
+		Metrics.ActionMetrics actionMetrics = metricsOf(route);
+		long start = System.nanoTime();
+		Tracer.Span span = Tracer.span("action", path);
 		try {
-			return executeAction(ctx, ctrlName, actionName);
+			if (route == null) {
+				throw new NoSuchActionException(path);
+			}
+			return executeAction(ctx, route.controllerInfo, route.actionInfo, route.actionName);
 		} catch (NoSuchActionException nme) {
 			log.warn(nme.getMessage());
+			actionMetrics.recordError(HttpServletResponse.SC_NOT_FOUND);
 			ctx.getResponse().sendError(HttpServletResponse.SC_NOT_FOUND);
 			return null;
 		} catch (HttpErrorException hee) {
-			log.warn("HttpErrorException " + hee.getStatusCode() + " :\"" + ctrlName + "/" + actionName + "\"");
+			log.warn("HttpErrorException " + hee.getStatusCode() + " :\"" + path + "\"");
+			actionMetrics.recordError(hee.getStatusCode());
 			ctx.getResponse().sendError(hee.getStatusCode());
 			return null;
 		} catch (Exception e) {
-			String msg = "error doing action \"" + actionName + "\"";
+			String msg = "error doing action \"" + route.actionName + "\"";
 			log.fatal(msg);
 			log.fatalException(e);
+			actionMetrics.recordError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 			ctx.getResponse().sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 			return null;
 		}
 		finally {
-			timer.done();
-		}
-	}
-
-	/**
-	 * Extract controller and action from servlet-path
-	 * @return String Array containing ctrlName and actionName (both may be null)
-	 */
-	private String[] extractControllerAndActionNames(String path) {
-		path = path.replaceFirst("^/+", "");	// remove leading slashs
-		String ctrlName = null;
-		String actionName = null;
-		if (path.length() > 0) {
-			int divider = path.lastIndexOf("/");
-			if (divider == -1) {
-				ctrlName = path;
-			} else {
-				ctrlName = path.substring(0, divider).trim();
-				if (divider+1 < path.length()) {
-					actionName = path.substring(divider+1).trim();
-				}
-			}
+			actionMetrics.getExecute().record(System.nanoTime() - start);
+			span.close();
 		}
-		return new String[] {ctrlName, actionName};
 	}
 
 	/**
@@ -584,24 +1059,36 @@ public class Dispatcher implements Filter {
 		if (controllerInfo == null) {
 			throw new NoSuchActionException(ctrlName + "/" + actionName);
 		}
-
-		/* create new instance of controller for specified ctrlName */
-		BaseController ctrl = getController(ctrlName);
-
 		if (StringUtils.isEmpty(actionName)) {
 			actionName = controllerInfo.defaultActionName;
 		}
+		return executeAction(ctx, controllerInfo, controllerInfo.actions.get(actionName), actionName);
+	}
+
+	/**
+	 * Executes action.
+	 * @param ctx
+	 * @param controllerInfo
+	 * @param actionInfo may be null, leading to a NoSuchActionException after the controller's beforeAction()
+	 * @param actionName
+	 * @return
+	 * @throws NoSuchActionException
+	 */
+	private Target executeAction(Context ctx, ControllerInfo controllerInfo, ActionInfo actionInfo, String actionName) throws NoSuchActionException {
+
+		/* get instance of controller according to it's scope */
+		BaseController ctrl = acquireController(controllerInfo, ctx);
+
 		try {
 			/* allow pre-processing */
 			ctrl.beforeAction(actionName);
 
-			/* find and invoke action */
+			/* invoke action */
 			Target target = null;
-			ActionInfo actionInfo = controllerInfo.actions.get(actionName);
 			if (actionInfo == null) {
-				throw new NoSuchActionException(ctrlName + "/" + actionName);
+				throw new NoSuchActionException(controllerInfo.controllerClass.getName() + "/" + actionName);
 			}
-			target = executeActionMethod(ctrl, actionInfo);
+			target = executeActionMethod(ctrl, actionInfo, ctx);
 
 			/* allow post-processing */
 			ctrl.afterAction(actionName, target);
@@ -610,6 +1097,52 @@ public class Dispatcher implements Filter {
 			return target;
 		} catch (ForceTargetException fte) { // action may throw this exception to force a target to be rendered
 			return fte.getTarget();
+		} finally {
+			releaseController(controllerInfo, ctrl);
+		}
+	}
+
+	/**
+	 * Gets controller instance to execute an action with, according to the controller's scope.
+	 * @param controllerInfo
+	 * @param ctx the current context
+	 * @return Controller object
+	 */
+	private BaseController acquireController(ControllerInfo controllerInfo, Context ctx) {
+		switch (controllerInfo.scope) {
+			case SINGLETON:
+				return controllerInfo.singleton;
+			case POOLED:
+				BaseController ctrl = controllerInfo.pool.get().pollFirst();
+				if (ctrl == null) {
+					ctrl = createController(controllerInfo);
+				}
+				ctrl.context = ctx;
+				return ctrl;
+			default:
+				return createController(controllerInfo);
+		}
+	}
+
+	/**
+	 * Puts pooled controller instances back into the pool of the current thread, if it is not full already.
+	 * @param controllerInfo
+	 * @param ctrl
+	 */
+	private void releaseController(ControllerInfo controllerInfo, BaseController ctrl) {
+		if (controllerInfo.scope != Controller.Scope.POOLED) {
+			return;
+		}
+		ctrl.context = null;
+		try {
+			ctrl.reset();
+		} catch (Exception e) {
+			log.warn("Resetting "+controllerInfo.controllerClass.getName()+" failed, instance is not reused: "+e.getMessage());
+			return;
+		}
+		ArrayDeque<BaseController> idle = controllerInfo.pool.get();
+		if (idle.size() < MAX_POOLED_CONTROLLERS_PER_THREAD) {
+			idle.offerFirst(ctrl);
 		}
 	}
 
@@ -617,28 +1150,30 @@ public class Dispatcher implements Filter {
 	 * Executes action method
 	 * @param controller
 	 * @param actionInfo
+	 * @param context
 	 * @return a target to continue with
 	 */
-	private Target executeActionMethod(BaseController controller, ActionInfo actionInfo) {
-		Method method = actionInfo.method;
+	private Target executeActionMethod(BaseController controller, ActionInfo actionInfo, Context context) {
+		ActionInfo.Parameter[] params = actionInfo.parameters;
 		try {
-			Object[] values = buildArguments(actionInfo, controller.context);
-			return (Target)method.invoke(controller, values);
+			switch (params.length) {	// avoid argument arrays for the most common cases
+				case 0:
+					return actionInfo.invoker.invoke(controller);
+				case 1:
+					return actionInfo.invoker.invoke(controller, buildArgument(params[0], context));
+				case 2:
+					return actionInfo.invoker.invoke(controller, buildArgument(params[0], context), buildArgument(params[1], context));
+				case 3:
+					return actionInfo.invoker.invoke(controller, buildArgument(params[0], context), buildArgument(params[1], context), buildArgument(params[2], context));
+				default:
+					return actionInfo.invoker.invoke(controller, buildArguments(actionInfo, context));
+			}
 		} catch (ForceTargetException e) {
 			throw(e);
 		} catch (HttpErrorException e) {
 			throw(e);
-		} catch (InvocationTargetException e) {
-			if (e.getTargetException() instanceof ForceTargetException) {
-				throw (ForceTargetException)(e.getTargetException());
-			} else if (e.getTargetException() instanceof HttpErrorException) {
-				throw (HttpErrorException)(e.getTargetException());
-			} else {
-				log.error("could not invoke method '"+method.getName()+"'");
-				log.errorException(e);
-			}
 		} catch (Throwable e) {
-			log.error("could not invoke method '"+method.getName()+"'");
+			log.error("could not invoke method '"+actionInfo.method.getName()+"'");
 			log.errorException(e);
 		}
 		return new NullTarget();
@@ -646,8 +1181,7 @@ public class Dispatcher implements Filter {
 
 	/**
 	 * Builds arguments for all parameters of given actionInfo.
-	 * For parameters annotated with {@link ContextParam} tries to find value from context's parameters.
-	 * For all other parameters safe null values are used.
+	 * @see #buildArgument(ActionInfo.Parameter, Context)
 	 *
 	 * @param actionInfo
 	 * @param context
@@ -656,27 +1190,41 @@ public class Dispatcher implements Filter {
 	private Object[] buildArguments(ActionInfo actionInfo, Context context) {
 		Object[] values = new Object[actionInfo.parameters.length];
 		for (int i = 0; i < actionInfo.parameters.length; i++) {
-			ActionInfo.Parameter param = actionInfo.parameters[i];
-			Object value = null;
-			if (param.contextParamName != null) {
-				// use contexts paramConvertUtil instance to be sure to be thread safe
-				if (param.type.isArray()) {
-					String[] paramValues = context.getParameterValues(param.contextParamName);
-					value = context.paramConvertUtil.convert(paramValues, param.type);
-				} else {
-					String paramValue = context.getParameter(param.contextParamName);
-					value = context.paramConvertUtil.convert(paramValue, param.type);
-				}
-			}
-			// if (still) null and a primitive, apply safe primitive 'null' value
-			if (value == null && param.type.isPrimitive()) {
-				value = DynaBeanUtils.getNullValueForPrimitive(param.type);
-			}
-			values[i] = value;
+			values[i] = buildArgument(actionInfo.parameters[i], context);
 		}
 		return values;
 	}
 
+	/**
+	 * Builds argument for given parameter.
+	 * For parameters annotated with {@link ContextParam} tries to find value from context's parameters,
+	 * converted by the parameter's converter, or by the context's ParamConvertUtil if it was created to register additional converters.
+	 * For all other parameters safe null values are used.
+	 *
+	 * @param param
+	 * @param context
+	 * @return
+	 */
+	private Object buildArgument(ActionInfo.Parameter param, Context context) {
+		Object value = null;
+		if (param.contextParamName != null) {
+			@SuppressWarnings("deprecation")
+			ParamConvertUtil convertUtil = context.paramConvertUtil;
+			if (param.type.isArray()) {
+				String[] paramValues = context.getParameterValues(param.contextParamName);
+				value = convertUtil != null ? convertUtil.convert(paramValues, param.type) : param.converter.convert(paramValues);
+			} else {
+				String paramValue = context.getParameter(param.contextParamName);
+				value = convertUtil != null ? convertUtil.convert(paramValue, param.type) : param.converter.convert(paramValue);
+			}
+		}
+		// if (still) null and a primitive, apply safe primitive 'null' value
+		if (value == null && param.type.isPrimitive()) {
+			value = DynaBeanUtils.getNullValueForPrimitive(param.type);
+		}
+		return value;
+	}
+
 	/**
 	 * Gets application context.
 	 * @return The application context
@@ -701,6 +1249,136 @@ public class Dispatcher implements Filter {
 		return velocityEngine;
 	}
 
+	/**
+	 * Gets parsed template, from the template cache in production mode.
+	 * @param name absolute name of the template
+	 * @return the template
+	 * @throws Exception if the template cannot be found or parsed
+	 */
+	public Template getTemplate(String name) throws Exception {
+		return templateCache != null ? templateCache.getTemplate(name) : velocityEngine.getTemplate(name, "UTF-8");
+	}
+
+	/**
+	 * Gets template cache
+	 * @return the cache or null if not in production mode
+	 */
+	public TemplateCache getTemplateCache() {
+		return templateCache;
+	}
+
+	/**
+	 * Gets max. number of bytes of output to buffer.
+	 * @return number of bytes, 0 if output should not be buffered
+	 * @see BufferedResponseWriter
+	 */
+	public int getOutputBufferSize() {
+		return settings.getOutputBufferSize();
+	}
+
+	/**
+	 * @return whether output of targets should be compressed if the client accepts it
+	 */
+	public boolean isCompression() {
+		return settings.isCompression();
+	}
+
+	/**
+	 * @return min. number of bytes of output to compress
+	 */
+	public int getCompressionMinSize() {
+		return settings.getCompressionMinSize();
+	}
+
+	/**
+	 * @return compression level 1-9
+	 */
+	public int getCompressionLevel() {
+		return settings.getCompressionLevel();
+	}
+
+	/**
+	 * Gets cache of responses of actions annotated with {@link Cached}, e.g. to invalidate them.
+	 * @return the cache
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * Starts task rendering a tile in the background, unless {@link #PARAM_TILES_THREADS} tiles are already being rendered.
+	 * The task is registered with the current context and cancelled if it is still running when the request ends,
+	 * see {@link Context#cancelBackgroundTasks()}.
+	 * Uses virtual threads if available (Java 21+), a pool of daemon threads otherwise.
+	 * @param task
+	 * @return the started task, null if it was not started
+	 */
+	public Future<?> submitTile(final Runnable task) {
+		ExecutorService executor;
+		synchronized (this) {
+			if (tileExecutor == null) {
+				tilePermits = new Semaphore(settings.getTilesThreads());
+				tileExecutor = createTileExecutor();
+			}
+			executor = tileExecutor;
+		}
+		if (!tilePermits.tryAcquire()) {
+			return null;
+		}
+		FutureTask<Void> future = new FutureTask<Void>(task, null) {
+			@Override
+			protected void done() {
+				tilePermits.release();	// also if cancelled before it was started
+			}
+		};
+		try {
+			executor.execute(future);
+		} catch (RejectedExecutionException e) {
+			tilePermits.release();
+			return null;
+		}
+		Context ctx = Context.getInstance();
+		if (ctx != null) {
+			ctx.addBackgroundTask(future);
+		}
+		return future;
+	}
+
+	private ExecutorService createTileExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			// no virtual threads before Java 21
+		}
+		final AtomicInteger count = new AtomicInteger();
+		return Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, PREFIX+"-tiles-"+count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * @return default time in ms to wait for the target of an {@link AsyncTarget}
+	 */
+	public int getAsyncTimeout() {
+		return settings.getAsyncTimeout();
+	}
+
+	/**
+	 * @return max. size in bytes of multipart requests; the init parameter is defined in mega-bytes
+	 */
+	public long getMaxFileUploadSize() {
+		return settings.getMaxFileUploadSize();
+	}
+
+	/**
+	 * @return default time in ms to wait for a tile rendered in the background
+	 */
+	public int getTileTimeout() {
+		return settings.getTilesTimeout();
+	}
+
 	/**
 	 * Gets velocity tool manager
 	 * @return The toolmanager
@@ -729,8 +1407,74 @@ public class Dispatcher implements Filter {
 		return s == null ? defaultValue : s;
 	}
 
+	/**
+	 * Gets metrics of the requests handled so far.
+	 * @return the metrics
+	 */
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return number of controllers found at startup
+	 */
+	public int getControllerCount() {
+		return distinctControllers().size();
+	}
+
+	/**
+	 * @return number of actions of all controllers, not counting aliases
+	 */
+	public int getActionCount() {
+		int count = 0;
+		for (ControllerInfo controllerInfo : distinctControllers()) {
+			Set<ActionInfo> actions = Collections.newSetFromMap(new IdentityHashMap<ActionInfo, Boolean>());
+			actions.addAll(controllerInfo.actions.values());
+			count += actions.size();
+		}
+		return count;
+	}
+
+	/** controllers without duplicates for aliases and the default controller */
+	private Set<ControllerInfo> distinctControllers() {
+		Set<ControllerInfo> set = Collections.newSetFromMap(new IdentityHashMap<ControllerInfo, Boolean>());
+		set.addAll(controllers.values());
+		return set;
+	}
+
+	/**
+	 * Gets tracer keeping slow traces of sampled requests.
+	 * @return the tracer
+	 */
+	public Tracer getTracer() {
+		return tracer;
+	}
+
+	/**
+	 * Gets the framework settings, parsed from init-parameters and configuration.
+	 * @return current settings, never null
+	 */
+	public Settings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Reloads the {@link Configuration} and replaces the settings with ones parsed from the init-parameters and the reloaded configuration.
+	 * Requests being handled keep seeing either the old or the new settings, never a mix.
+	 */
+	public void reloadConfiguration() {
+		Configuration.reload();
+		settings = new Settings(initParams, Configuration.getAll());
+		log.info("Configuration reloaded.");
+	}
+
 	@Override
 	public void destroy() {
+		synchronized (this) {
+			if (tileExecutor != null) {
+				tileExecutor.shutdownNow();
+			}
+		}
 		System.out.println("Good Bye and Good Luck. "+applicationContext.getAttribute(APP_NAME_KEY)+" was up for "+getFormattedUptime()+".");
 		ShutdownManager.shutdown();	// Automatic shutdown of Ebean sometimes throws NPE when invoked too late, so we do it here explicitly.
 	}
@@ -746,13 +1490,14 @@ public class Dispatcher implements Filter {
 		if (supported == null) {
 			return null;
 		}
+		Collection<String> languages = supported == supportedLanguages && supportedLanguageSet != null ? supportedLanguageSet : supported;
 		while (accepted.hasMoreElements()) {
 			Locale l = (Locale)accepted.nextElement();
-			if (supported.contains(l.getLanguage())) {
+			if (languages.contains(l.getLanguage())) {
 				return l;
 			}
 		}
-		return new Locale((String)supportedLanguages.get(0));
+		return fallbackLocale != null ? fallbackLocale : new Locale(supportedLanguages.get(0));
 	}
 
 	public String getFormattedUptime() {
@@ -20,6 +20,7 @@ import panama.json.JSONObject;
 
 /**
  * Converts the specified json to a string and writes it as response.
+ * For large json use {@link StreamingJsonTarget}, which writes directly to the response.
  * @author ridcully
  */
 public class JsonTarget extends Target {
@@ -51,8 +52,11 @@ public class JsonTarget extends Target {
 	@Override
 	public void go() throws Exception {
 		applyStatusCode();
+		if (isNotModified()) {
+			return;
+		}
 		Context ctx = Context.getInstance();
 		ctx.getResponse().setContentType("application/json; charset=UTF-8");
-		ctx.getResponse().getWriter().write(text);
+		write(text);
 	}
 }
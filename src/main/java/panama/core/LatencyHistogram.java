@@ -0,0 +1,122 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds.
+ *
+ * Like a HDR histogram, buckets grow exponentially and each power of two is split into {@link #SUB_BUCKETS} linear sub-buckets,
+ * so percentiles are accurate to 1/8 (12.5%) of the value over the whole range of longs, using a fixed array of about 500 counters.
+ *
+ * @author ridcully
+ */
+public class LatencyHistogram {
+
+	private final static int SUB_BITS = 3;
+	public final static int SUB_BUCKETS = 1 << SUB_BITS;
+	private final static int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a duration.
+	 * @param nanos duration in nanoseconds, negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(index(nanos));
+		count.increment();
+		sum.add(nanos);
+		long m;
+		while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos));
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int)value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/** @return highest value that falls into bucket with given index */
+	static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = index % SUB_BUCKETS;
+		long lower = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+		return lower + (1L << (exponent - SUB_BITS)) - 1;
+	}
+
+	/** @return number of recorded values */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/** @return sum of recorded values in nanoseconds */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/** @return highest recorded value in nanoseconds */
+	public long getMax() {
+		return max.get();
+	}
+
+	/** @return mean of recorded values in nanoseconds, 0 if there are none */
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double)sum.sum() / n;
+	}
+
+	/**
+	 * Gets value at given percentile. As values are recorded concurrently, the result is approximate.
+	 * @param percentile 0-100
+	 * @return value in nanoseconds below or at which given percentage of the recorded values lie, 0 if there are none
+	 */
+	public long getPercentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+}
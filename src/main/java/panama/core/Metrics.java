@@ -0,0 +1,279 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import panama.json.JSONArray;
+import panama.json.JSONObject;
+
+/**
+ * Registry of request metrics, maintained by the Dispatcher.
+ *
+ * For each action, the time needed to execute it and to render its target is recorded in {@link LatencyHistogram}s,
+ * along with the number of requests, requests in flight and responses with 4xx or 5xx status codes.
+ * Requests that could not be resolved to an action are recorded as {@link #UNMATCHED}.
+ * Updating the metrics is lock-free; they can be exported as JSON or in the Prometheus text format, see {@link SystemController}.
+ *
+ * @author ridcully
+ */
+public class Metrics {
+
+	/** name of the metrics of requests that could not be resolved to an action */
+	public final static String UNMATCHED = "unmatched";
+
+	private final static double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+	/**
+	 * Metrics of a single action.
+	 */
+	public static class ActionMetrics {
+		private final String name;
+		private final LongAdder requests = new LongAdder();
+		private final AtomicLong inFlight = new AtomicLong();
+		private final LongAdder clientErrors = new LongAdder();
+		private final LongAdder serverErrors = new LongAdder();
+		private final LatencyHistogram execute = new LatencyHistogram();
+		private final LatencyHistogram render = new LatencyHistogram();
+
+		ActionMetrics(String name) {
+			this.name = name;
+		}
+
+		/** Records start of a request */
+		public void begin() {
+			requests.increment();
+			inFlight.incrementAndGet();
+		}
+
+		/** Records end of a request */
+		public void end() {
+			inFlight.decrementAndGet();
+		}
+
+		/**
+		 * Records an error response.
+		 * @param statusCode 4xx or 5xx, other codes are ignored
+		 */
+		public void recordError(int statusCode) {
+			if (statusCode >= 500) {
+				serverErrors.increment();
+			} else if (statusCode >= 400) {
+				clientErrors.increment();
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getRequests() {
+			return requests.sum();
+		}
+
+		public long getInFlight() {
+			return inFlight.get();
+		}
+
+		public long getClientErrors() {
+			return clientErrors.sum();
+		}
+
+		public long getServerErrors() {
+			return serverErrors.sum();
+		}
+
+		/** @return durations of executing the action */
+		public LatencyHistogram getExecute() {
+			return execute;
+		}
+
+		/** @return durations of rendering the target */
+		public LatencyHistogram getRender() {
+			return render;
+		}
+	}
+
+	private final ConcurrentMap<String, ActionMetrics> actions = new ConcurrentHashMap<String, ActionMetrics>();
+	private final ActionMetrics unmatched = forAction(UNMATCHED);
+	private final LatencyHistogram templates = new LatencyHistogram();
+
+	/**
+	 * Gets metrics of an action, creating them if necessary. The Dispatcher does this once per action at startup.
+	 * @param name name of the action, e.g. the controller's class name and the action name
+	 * @return the metrics
+	 */
+	public ActionMetrics forAction(String name) {
+		ActionMetrics m = actions.get(name);
+		if (m == null) {
+			m = new ActionMetrics(name);
+			ActionMetrics existing = actions.putIfAbsent(name, m);
+			if (existing != null) {
+				m = existing;
+			}
+		}
+		return m;
+	}
+
+	/** @return metrics of requests that could not be resolved to an action */
+	public ActionMetrics getUnmatched() {
+		return unmatched;
+	}
+
+	/** @return metrics of all actions */
+	public Collection<ActionMetrics> getActions() {
+		return actions.values();
+	}
+
+	/**
+	 * Gets the actions with the highest 99th percentile of execute plus render time.
+	 * @param n max. number of actions to return
+	 * @return the actions, slowest first
+	 */
+	public List<ActionMetrics> getSlowest(int n) {
+		List<ActionMetrics> list = sortedActions();
+		Map<ActionMetrics, Long> p99 = new HashMap<ActionMetrics, Long>();
+		for (ActionMetrics m : list) {
+			p99.put(m, m.getExecute().getPercentile(99) + m.getRender().getPercentile(99));
+		}
+		list.sort((a, b) -> Long.compare(p99.get(b), p99.get(a)));
+		return list.subList(0, Math.min(n, list.size()));
+	}
+
+	/** @return durations of merging templates, including nested ones */
+	public LatencyHistogram getTemplates() {
+		return templates;
+	}
+
+	/**
+	 * Exports metrics of all actions that were requested at least once, durations are in milliseconds.
+	 * @return the metrics as JSON
+	 */
+	public JSONObject toJSON() {
+		JSONArray list = new JSONArray();
+		for (ActionMetrics m : sortedActions()) {
+			JSONObject json = new JSONObject();
+			json.put("action", m.getName());
+			json.put("requests", m.getRequests());
+			json.put("inFlight", m.getInFlight());
+			json.put("clientErrors", m.getClientErrors());
+			json.put("serverErrors", m.getServerErrors());
+			json.put("execute", toJSON(m.getExecute()));
+			json.put("render", toJSON(m.getRender()));
+			list.put(json);
+		}
+		JSONObject json = new JSONObject();
+		json.put("actions", list);
+		json.put("templates", toJSON(templates));
+		return json;
+	}
+
+	/**
+	 * @param h
+	 * @return count, mean, percentiles and max of given histogram as JSON, durations in milliseconds
+	 */
+	public static JSONObject toJSON(LatencyHistogram h) {
+		JSONObject json = new JSONObject();
+		json.put("count", h.getCount());
+		json.put("mean", millis(h.getMean()));
+		for (double q : QUANTILES) {
+			json.put("p"+format(q * 100), millis(h.getPercentile(q * 100)));
+		}
+		json.put("max", millis(h.getMax()));
+		return json;
+	}
+
+	/**
+	 * Exports metrics of all actions that were requested at least once in the Prometheus text format, durations are in seconds.
+	 * @return the metrics as text
+	 */
+	public String toPrometheus() {
+		StringBuilder sb = new StringBuilder(4096);
+		List<ActionMetrics> list = sortedActions();
+		sb.append("# TYPE panama_requests_total counter\n");
+		for (ActionMetrics m : list) {
+			sample(sb, "panama_requests_total", m, null, m.getRequests());
+		}
+		sb.append("# TYPE panama_requests_in_flight gauge\n");
+		for (ActionMetrics m : list) {
+			sample(sb, "panama_requests_in_flight", m, null, m.getInFlight());
+		}
+		sb.append("# TYPE panama_errors_total counter\n");
+		for (ActionMetrics m : list) {
+			sample(sb, "panama_errors_total", m, "status=\"4xx\"", m.getClientErrors());
+			sample(sb, "panama_errors_total", m, "status=\"5xx\"", m.getServerErrors());
+		}
+		for (String phase : new String[] {"execute", "render"}) {
+			String metric = "panama_action_"+phase+"_seconds";
+			sb.append("# TYPE ").append(metric).append(" summary\n");
+			for (ActionMetrics m : list) {
+				LatencyHistogram h = "execute".equals(phase) ? m.getExecute() : m.getRender();
+				for (double q : QUANTILES) {
+					sample(sb, metric, m, "quantile=\""+q+"\"", seconds(h.getPercentile(q * 100)));
+				}
+				sample(sb, metric+"_sum", m, null, seconds(h.getSum()));
+				sample(sb, metric+"_count", m, null, h.getCount());
+			}
+		}
+		sb.append("# TYPE panama_template_seconds summary\n");
+		for (double q : QUANTILES) {
+			sb.append("panama_template_seconds{quantile=\"").append(q).append("\"} ").append(seconds(templates.getPercentile(q * 100))).append('\n');
+		}
+		sb.append("panama_template_seconds_sum ").append(seconds(templates.getSum())).append('\n');
+		sb.append("panama_template_seconds_count ").append(templates.getCount()).append('\n');
+		return sb.toString();
+	}
+
+	private void sample(StringBuilder sb, String metric, ActionMetrics m, String label, Object value) {
+		sb.append(metric).append("{action=\"").append(m.getName().replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+		if (label != null) {
+			sb.append(',').append(label);
+		}
+		sb.append("} ").append(value).append('\n');
+	}
+
+	private List<ActionMetrics> sortedActions() {
+		List<ActionMetrics> list = new ArrayList<ActionMetrics>();
+		for (ActionMetrics m : actions.values()) {
+			if (m.getRequests() > 0) {
+				list.add(m);
+			}
+		}
+		list.sort((a, b) -> a.getName().compareTo(b.getName()));
+		return list;
+	}
+
+	static double millis(double nanos) {
+		return Math.round(nanos / 1000d) / 1000d;
+	}
+
+	private static double seconds(double nanos) {
+		return nanos / 1e9;
+	}
+
+	private static String format(double percent) {
+		return String.format(Locale.ROOT, "%s", percent).replaceAll("\\.0$", "").replace('.', '_');
+	}
+}
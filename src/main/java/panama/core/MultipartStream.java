@@ -0,0 +1,192 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.fileupload.util.Streams;
+
+/**
+ * Reads the parts of a multipart request one after the other, directly from the request body,
+ * without storing them in memory or temporary files first.
+ *
+ * Used for actions annotated with <code>@Action(streamingUpload=true)</code>, get it via {@link Context#getMultipartStream()}.
+ * Parts must be processed in the order they were sent, so form fields sent after a file are only available after that file.
+ * The max. upload size is enforced while reading, exceeding it results in an IOException.
+ * <pre>
+ * MultipartStream.Part part;
+ * while ((part = context.getMultipartStream().next()) != null) {
+ *     if (!part.isFormField()) {
+ *         part.transferTo(path);
+ *     }
+ * }
+ * </pre>
+ * @author ridcully
+ */
+public class MultipartStream {
+
+	private final static int CHUNK_SIZE = 64 * 1024;
+
+	private final FileItemIterator iterator;
+	private final String encoding;
+	private Part current;
+
+	/**
+	 * @param request
+	 * @param sizeMax maximum allowed size of the request in bytes, -1 for no maximum.
+	 * @throws IOException if the request cannot be read or is no multipart request
+	 */
+	public MultipartStream(HttpServletRequest request, long sizeMax) throws IOException {
+		ServletFileUpload fileUpload = new ServletFileUpload();
+		fileUpload.setSizeMax(sizeMax);
+		this.encoding = request.getCharacterEncoding() != null ? request.getCharacterEncoding() : "UTF-8";
+		try {
+			this.iterator = fileUpload.getItemIterator(request);
+		} catch (FileUploadException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Moves to the next part, skipping what was not read of the current one.
+	 * Like for {@link HttpMultipartServletRequest}, file inputs without a selected file are skipped.
+	 * @return the next part or null if there are no more parts
+	 * @throws IOException if the request cannot be read or exceeds the max. upload size
+	 */
+	public Part next() throws IOException {
+		try {
+			while (iterator.hasNext()) {
+				FileItemStream item = iterator.next();
+				if (item.isFormField() || (item.getName() != null && item.getName().length() > 0)) {
+					current = new Part(item);
+					return current;
+				}
+			}
+		} catch (FileUploadException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		current = null;
+		return null;
+	}
+
+	/**
+	 * @return the part returned by the last call of {@link #next()}
+	 */
+	public Part getCurrent() {
+		return current;
+	}
+
+	/**
+	 * A single part, valid until the next part is requested.
+	 */
+	public class Part {
+
+		private final FileItemStream item;
+
+		Part(FileItemStream item) {
+			this.item = item;
+		}
+
+		public String getFieldName() {
+			return item.getFieldName();
+		}
+
+		/** @return the original file name or null for form fields */
+		public String getName() {
+			return item.getName();
+		}
+
+		public String getContentType() {
+			return item.getContentType();
+		}
+
+		public boolean isFormField() {
+			return item.isFormField();
+		}
+
+		/**
+		 * Opens stream to the contents of the part. Reading blocks until the client has sent the data.
+		 * @return the stream, closing it skips the rest of the part
+		 * @throws IOException
+		 */
+		public InputStream openStream() throws IOException {
+			return item.openStream();
+		}
+
+		/**
+		 * Reads the contents as string, meant for form fields.
+		 * @return the value
+		 * @throws IOException
+		 */
+		public String getString() throws IOException {
+			InputStream in = item.openStream();
+			try {
+				return Streams.asString(in, encoding);
+			} finally {
+				in.close();
+			}
+		}
+
+		/**
+		 * Transfers the contents to given channel, starting at its current position.
+		 * The contents are read in chunks straight into the channel, without an intermediate copy in memory or on disk.
+		 * As reading blocks until the client has sent more data, a slow disk slows down the upload (and vice versa).
+		 * @param channel
+		 * @return number of bytes transferred
+		 * @throws IOException
+		 */
+		public long transferTo(FileChannel channel) throws IOException {
+			InputStream in = item.openStream();
+			try {
+				ReadableByteChannel source = Channels.newChannel(in);
+				long position = channel.position();
+				long start = position;
+				long n;
+				while ((n = channel.transferFrom(source, position, CHUNK_SIZE)) > 0) {	// blocking source, so 0 means end of part
+					position += n;
+				}
+				channel.position(position);
+				return position - start;
+			} finally {
+				in.close();
+			}
+		}
+
+		/**
+		 * Transfers the contents to a file, which is created or overwritten.
+		 * @param path
+		 * @return number of bytes transferred
+		 * @throws IOException
+		 */
+		public long transferTo(Path path) throws IOException {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				return transferTo(channel);
+			}
+		}
+	}
+}
@@ -35,6 +35,8 @@ import org.apache.commons.beanutils.converters.SqlTimestampConverter;
  *
  * This is only one-way, so cannot be used for Fields etc.
  *
+ * For conversion of parameters, {@link ParamConverter} provides faster converters for the most common types and uses this class for the others.
+ *
  * @author ridcully
  *
  */
@@ -49,6 +51,21 @@ public class ParamConvertUtil extends ConvertUtilsBean {
 		"yyyy-MM-dd'T'HH:mm:ss.SSSXXX" // ISO 8601 with Timezone
 	};
 
+	/** shared instance, created lazily */
+	private static ParamConvertUtil sharedInstance;
+
+	/**
+	 * Gets a shared instance. As the registered converters are not changed after construction, it can be used by many threads.
+	 * Do not register additional converters on the shared instance.
+	 * @return the shared instance
+	 */
+	public static synchronized ParamConvertUtil getSharedInstance() {
+		if (sharedInstance == null) {
+			sharedInstance = new ParamConvertUtil();
+		}
+		return sharedInstance;
+	}
+
 	public ParamConvertUtil() {
 		register(false, true, 0); // don't throw exceptions, use default values
 
@@ -0,0 +1,357 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.core;
+
+import java.lang.reflect.Array;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Converts parameter values to a specific type.
+ *
+ * Converters are immutable and thread safe. Get them via {@link #forType(Class)}, which returns the same instance for the same type.
+ * The Dispatcher resolves the converter for each action method parameter once at startup.
+ *
+ * Conversion rules are the same as those of {@link ParamConvertUtil}: values that cannot be converted result in null,
+ * or 0 (false) for primitives. Additionally enums are supported by their names.
+ * Types without a specialized converter are converted by a shared {@link ParamConvertUtil} instance.
+ *
+ * @author ridcully
+ */
+public abstract class ParamConverter {
+
+	private final static Map<Class<?>, ParamConverter> CONVERTERS = new ConcurrentHashMap<Class<?>, ParamConverter>();
+
+	/**
+	 * Gets converter for given type.
+	 * @param type
+	 * @return a ParamConverter, never null
+	 */
+	public static ParamConverter forType(Class<?> type) {
+		ParamConverter converter = CONVERTERS.get(type);
+		if (converter == null) {
+			converter = create(type);
+			CONVERTERS.put(type, converter);
+		}
+		return converter;
+	}
+
+	/**
+	 * Converts single value.
+	 * @param value may be null
+	 * @return converted value or the default value if conversion is not possible
+	 */
+	public abstract Object convert(String value);
+
+	/**
+	 * Converts multiple values, used for array types.
+	 * Default implementation converts the first value.
+	 * @param values may be null
+	 * @return converted value or the default value if conversion is not possible
+	 */
+	public Object convert(String[] values) {
+		return convert(values != null && values.length > 0 ? values[0] : null);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static ParamConverter create(Class<?> type) {
+		if (type.isArray()) {
+			Class<?> componentType = type.getComponentType();
+			ParamConverter componentConverter = forType(componentType);
+			return componentConverter instanceof UtilConverter ? new UtilConverter(type) : new ArrayConverter(componentType, componentConverter);
+		}
+		if (type == String.class) return new StringConverter();
+		if (type == int.class) return new IntConverter(0);
+		if (type == Integer.class) return new IntConverter(null);
+		if (type == long.class) return new LongConverter(0L);
+		if (type == Long.class) return new LongConverter(null);
+		if (type == short.class) return new ShortConverter((short)0);
+		if (type == Short.class) return new ShortConverter(null);
+		if (type == byte.class) return new ByteConverter((byte)0);
+		if (type == Byte.class) return new ByteConverter(null);
+		if (type == double.class) return new DoubleConverter(0d);
+		if (type == Double.class) return new DoubleConverter(null);
+		if (type == float.class) return new FloatConverter(0f);
+		if (type == Float.class) return new FloatConverter(null);
+		if (type == boolean.class) return new BooleanConverter(false);
+		if (type == Boolean.class) return new BooleanConverter(null);
+		if (type.isEnum()) return new EnumConverter(type);
+		if (type == java.util.Date.class || type == java.sql.Date.class || type == java.sql.Time.class || type == java.sql.Timestamp.class) {
+			return new DateConverter(type);
+		}
+		return new UtilConverter(type);
+	}
+
+	/** trims value, returns null for null or empty values */
+	private static String trim(String value) {
+		if (value == null) return null;
+		value = value.trim();
+		return value.length() > 0 ? value : null;
+	}
+
+	private static class StringConverter extends ParamConverter {
+		@Override
+		public Object convert(String value) {
+			return value;
+		}
+	}
+
+	private static class IntConverter extends ParamConverter {
+		private final Integer defaultValue;
+		IntConverter(Integer defaultValue) {
+			this.defaultValue = defaultValue;
+		}
+		@Override
+		public Object convert(String value) {
+			value = trim(value);
+			if (value == null) return defaultValue;
+			try {
+				return Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				return defaultValue;
+			}
+		}
+	}
+
+	private static class LongConverter extends ParamConverter {
+		private final Long defaultValue;
+		LongConverter(Long defaultValue) {
+			this.defaultValue = defaultValue;
+		}
+		@Override
+		public Object convert(String value) {
+			value = trim(value);
+			if (value == null) return defaultValue;
+			try {
+				return Long.parseLong(value);
+			} catch (NumberFormatException e) {
+				return defaultValue;
+			}
+		}
+	}
+
+	private static class ShortConverter extends ParamConverter {
+		private final Short defaultValue;
+		ShortConverter(Short defaultValue) {
+			this.defaultValue = defaultValue;
+		}
+		@Override
+		public Object convert(String value) {
+			value = trim(value);
+			if (value == null) return defaultValue;
+			try {
+				return Short.parseShort(value);
+			} catch (NumberFormatException e) {
+				return defaultValue;
+			}
+		}
+	}
+
+	private static class ByteConverter extends ParamConverter {
+		private final Byte defaultValue;
+		ByteConverter(Byte defaultValue) {
+			this.defaultValue = defaultValue;
+		}
+		@Override
+		public Object convert(String value) {
+			value = trim(value);
+			if (value == null) return defaultValue;
+			try {
+				return Byte.parseByte(value);
+			} catch (NumberFormatException e) {
+				return defaultValue;
+			}
+		}
+	}
+
+	private static class DoubleConverter extends ParamConverter {
+		private final Double defaultValue;
+		DoubleConverter(Double defaultValue) {
+			this.defaultValue = defaultValue;
+		}
+		@Override
+		public Object convert(String value) {
+			value = trim(value);
+			if (value == null) return defaultValue;
+			try {
+				return Double.parseDouble(value);
+			} catch (NumberFormatException e) {
+				return defaultValue;
+			}
+		}
+	}
+
+	private static class FloatConverter extends ParamConverter {
+		private final Float defaultValue;
+		FloatConverter(Float defaultValue) {
+			this.defaultValue = defaultValue;
+		}
+		@Override
+		public Object convert(String value) {
+			value = trim(value);
+			if (value == null) return defaultValue;
+			try {
+				return Float.parseFloat(value);
+			} catch (NumberFormatException e) {
+				return defaultValue;
+			}
+		}
+	}
+
+	/** Same values as commons-beanutils' BooleanConverter */
+	private static class BooleanConverter extends ParamConverter {
+		private final static String[] TRUE_STRINGS = {"true", "yes", "y", "on", "1"};
+		private final static String[] FALSE_STRINGS = {"false", "no", "n", "off", "0"};
+		private final Boolean defaultValue;
+		BooleanConverter(Boolean defaultValue) {
+			this.defaultValue = defaultValue;
+		}
+		@Override
+		public Object convert(String value) {
+			value = trim(value);
+			if (value == null) return defaultValue;
+			for (String s : TRUE_STRINGS) {
+				if (s.equalsIgnoreCase(value)) return Boolean.TRUE;
+			}
+			for (String s : FALSE_STRINGS) {
+				if (s.equalsIgnoreCase(value)) return Boolean.FALSE;
+			}
+			return defaultValue;
+		}
+	}
+
+	private static class EnumConverter<E extends Enum<E>> extends ParamConverter {
+		private final Map<String, E> constants;
+		EnumConverter(Class<E> type) {
+			Map<String, E> map = new HashMap<String, E>();
+			for (E e : type.getEnumConstants()) {
+				map.put(e.name(), e);
+			}
+			constants = Collections.unmodifiableMap(map);
+		}
+		@Override
+		public Object convert(String value) {
+			value = trim(value);
+			return value != null ? constants.get(value) : null;
+		}
+	}
+
+	/**
+	 * Supports the patterns of {@link ParamConvertUtil#DEFAULT_DATE_TIME_PATTERNS}, using immutable formatters.
+	 * Values without date get 1970-01-01, values without time get midnight, values without offset are interpreted in the default time zone.
+	 * The formatters only accept values with all digits of the patterns, others (like "2015-8-1", "9:30" or fractions with fewer digits)
+	 * are converted by the shared ParamConvertUtil, so results are the same as with it.
+	 */
+	private static class DateConverter extends ParamConverter {
+		private final static DateTimeFormatter[] FORMATTERS = createFormatters();
+		private final static LocalDate NO_DATE = LocalDate.of(1970, 1, 1);
+		private final Class<?> type;
+
+		DateConverter(Class<?> type) {
+			this.type = type;
+		}
+
+		private static DateTimeFormatter[] createFormatters() {
+			String[] patterns = ParamConvertUtil.DEFAULT_DATE_TIME_PATTERNS;
+			DateTimeFormatter[] formatters = new DateTimeFormatter[patterns.length];
+			for (int i = 0; i < patterns.length; i++) {
+				// strict resolving (like non-lenient SimpleDateFormat) requires 'u' instead of 'y' for years
+				formatters[i] = DateTimeFormatter.ofPattern(patterns[i].replace('y', 'u')).withResolverStyle(ResolverStyle.STRICT);
+			}
+			return formatters;
+		}
+
+		@Override
+		public Object convert(String value) {
+			value = trim(value);
+			if (value == null) return null;
+			for (DateTimeFormatter f : FORMATTERS) {
+				TemporalAccessor t;
+				try {
+					t = f.parse(value);
+				} catch (RuntimeException e) {
+					continue;
+				}
+				return toType(toMillis(t));
+			}
+			return ParamConvertUtil.getSharedInstance().convert(value, type);
+		}
+
+		private long toMillis(TemporalAccessor t) {
+			if (t.isSupported(ChronoField.OFFSET_SECONDS)) {
+				return OffsetDateTime.from(t).toInstant().toEpochMilli();
+			}
+			LocalDate date = t.isSupported(ChronoField.EPOCH_DAY) ? LocalDate.from(t) : NO_DATE;
+			LocalTime time = t.isSupported(ChronoField.NANO_OF_DAY) ? LocalTime.from(t) : LocalTime.MIDNIGHT;
+			return date.atTime(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		}
+
+		private Object toType(long millis) {
+			if (type == java.sql.Date.class) return new java.sql.Date(millis);
+			if (type == java.sql.Time.class) return new java.sql.Time(millis);
+			if (type == java.sql.Timestamp.class) return new java.sql.Timestamp(millis);
+			return new java.util.Date(millis);
+		}
+	}
+
+	private static class ArrayConverter extends ParamConverter {
+		private final Class<?> componentType;
+		private final ParamConverter componentConverter;
+		ArrayConverter(Class<?> componentType, ParamConverter componentConverter) {
+			this.componentType = componentType;
+			this.componentConverter = componentConverter;
+		}
+		@Override
+		public Object convert(String value) {
+			return value != null ? convert(new String[] {value}) : null;
+		}
+		@Override
+		public Object convert(String[] values) {
+			if (values == null) return null;
+			Object array = Array.newInstance(componentType, values.length);
+			for (int i = 0; i < values.length; i++) {
+				Array.set(array, i, componentConverter.convert(values[i]));
+			}
+			return array;
+		}
+	}
+
+	/** Uses shared {@link ParamConvertUtil} for all other types */
+	private static class UtilConverter extends ParamConverter {
+		private final Class<?> type;
+		UtilConverter(Class<?> type) {
+			this.type = type;
+		}
+		@Override
+		public Object convert(String value) {
+			return ParamConvertUtil.getSharedInstance().convert(value, type);
+		}
+		@Override
+		public Object convert(String[] values) {
+			return type.isArray() ? ParamConvertUtil.getSharedInstance().convert(values, type) : super.convert(values);
+		}
+	}
+}
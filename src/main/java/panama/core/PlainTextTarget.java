@@ -35,8 +35,11 @@ public class PlainTextTarget extends Target {
 	@Override
 	public void go() throws Exception {
 		applyStatusCode();
+		if (isNotModified()) {
+			return;
+		}
 		Context ctx = Context.getInstance();
 		ctx.getResponse().setContentType("text/plain; charset=UTF-8");
-		ctx.getResponse().getWriter().write(text+"");
+		write(text+"");
 	}
 }
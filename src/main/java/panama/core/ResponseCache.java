@@ -0,0 +1,552 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Bounded cache of rendered responses of actions annotated with {@link panama.annotations.Cached}, used by the Dispatcher.
+ *
+ * The cache is limited by the total size of the cached bodies, least recently used responses are removed first.
+ * Concurrent misses for the same key render the response only once, the other requests wait for the result
+ * (but not longer than a limit, then they render the response themselves).
+ *
+ * @author ridcully
+ */
+public class ResponseCache {
+
+	/**
+	 * Renders a response on a cache miss.
+	 */
+	public interface Renderer {
+		/**
+		 * @return the captured response, never null
+		 */
+		CachedResponse render() throws Exception;
+	}
+
+	/**
+	 * Identifies a cached response by controller, action, the values of the parameters it varies by and the content encoding.
+	 */
+	public static class Key {
+		final Class<?> controllerClass;
+		final String actionName;
+		final String[] varyBy;
+		final String[] values;
+		final String encoding;
+		private final int hash;
+
+		/**
+		 * @param controllerClass
+		 * @param actionName name of the action method
+		 * @param varyBy names of the parameters the response varies by
+		 * @param values values of these parameters
+		 * @param encoding content encoding of the response, null for none
+		 */
+		public Key(Class<?> controllerClass, String actionName, String[] varyBy, String[] values, String encoding) {
+			this.controllerClass = controllerClass;
+			this.actionName = actionName;
+			this.varyBy = varyBy;
+			this.values = values;
+			this.encoding = encoding;
+			this.hash = 31 * (31 * (31 * controllerClass.hashCode() + actionName.hashCode()) + Arrays.hashCode(values)) + (encoding != null ? encoding.hashCode() : 0);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			Key other = (Key)obj;
+			return hash == other.hash
+					&& controllerClass == other.controllerClass
+					&& actionName.equals(other.actionName)
+					&& Arrays.equals(values, other.values)
+					&& (encoding == null ? other.encoding == null : encoding.equals(other.encoding));
+		}
+
+		/** whether key belongs to action and has all the given parameter values */
+		boolean matches(Class<?> controllerClass, String actionName, String[] namesAndValues) {
+			if (this.controllerClass != controllerClass || !this.actionName.equals(actionName)) {
+				return false;
+			}
+			for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+				int idx = Arrays.asList(varyBy).indexOf(namesAndValues[i]);
+				if (idx < 0 || (values[idx] == null ? namesAndValues[i + 1] != null : !values[idx].equals(namesAndValues[i + 1]))) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Status, headers and body of a rendered response.
+	 */
+	public static class CachedResponse {
+		private int status = HttpServletResponse.SC_OK;
+		private String contentType;
+		private final List<String[]> headers = new ArrayList<String[]>();
+		private byte[] body = new byte[0];
+		private boolean cacheable = true;
+		private boolean sent;		// response was sent directly (error or redirect), nothing to write
+		private long expiresAt;
+
+		public boolean isCacheable() {
+			return cacheable && !sent && status == HttpServletResponse.SC_OK;
+		}
+
+		public int getSize() {
+			return body.length;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return whether an error or redirect was sent instead of a body
+		 */
+		public boolean isSent() {
+			return sent;
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+
+		/**
+		 * Writes response, or sends 304 (Not Modified) if it has an ETag matching the request's If-None-Match header.
+		 */
+		public void writeTo(HttpServletRequest req, HttpServletResponse res) throws IOException {
+			if (sent) {
+				return;
+			}
+			String etag = getHeader("ETag");
+			String ifNoneMatch = req.getHeader("If-None-Match");
+			if (etag != null && ifNoneMatch != null && Target.matches(ifNoneMatch, etag)) {
+				res.setHeader("ETag", etag);
+				res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+			if (status != HttpServletResponse.SC_OK) {
+				res.setStatus(status);
+			}
+			if (contentType != null) {
+				res.setContentType(contentType);
+			}
+			for (String[] header : headers) {
+				res.addHeader(header[0], header[1]);
+			}
+			res.setContentLength(body.length);
+			res.getOutputStream().write(body);
+		}
+
+		private String getHeader(String name) {
+			for (String[] header : headers) {
+				if (header[0].equalsIgnoreCase(name)) return header[1];
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Captures everything written to the response, except errors, redirects and cookies which are passed on (and make the response uncacheable)
+	 * unless passing on is disabled.
+	 */
+	public static class CapturingResponse extends HttpServletResponseWrapper {
+
+		private final CachedResponse captured = new CachedResponse();
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private ServletOutputStream stream;
+		private PrintWriter writer;
+		private final boolean passOn;
+
+		public CapturingResponse(HttpServletResponse response) {
+			this(response, true);
+		}
+
+		/**
+		 * @param response
+		 * @param passOn whether to pass errors, redirects and cookies on to the response, otherwise they are only recorded
+		 */
+		public CapturingResponse(HttpServletResponse response, boolean passOn) {
+			super(response);
+			this.passOn = passOn;
+		}
+
+		/**
+		 * @return the captured response
+		 */
+		public CachedResponse getCaptured() {
+			if (writer != null) {
+				writer.flush();
+			}
+			captured.body = bytes.toByteArray();
+			return captured;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() {
+			if (stream == null) {
+				stream = new ServletOutputStream() {
+					@Override
+					public void write(int b) {
+						bytes.write(b);
+					}
+					@Override
+					public void write(byte[] b, int off, int len) {
+						bytes.write(b, off, len);
+					}
+					@Override
+					public boolean isReady() {
+						return true;
+					}
+					@Override
+					public void setWriteListener(WriteListener writeListener) {
+						// capturing never blocks, so writing is possible right away
+						try {
+							writeListener.onWritePossible();
+						} catch (IOException e) {
+							writeListener.onError(e);
+						}
+					}
+				};
+			}
+			return stream;
+		}
+
+		@Override
+		public PrintWriter getWriter() {
+			if (writer == null) {
+				writer = new PrintWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8));
+			}
+			return writer;
+		}
+
+		@Override
+		public void setStatus(int sc) {
+			captured.status = sc;
+		}
+
+		@SuppressWarnings("deprecation")
+		@Override
+		public void setStatus(int sc, String sm) {
+			captured.status = sc;
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+			captured.sent = true;
+			captured.status = sc;
+			if (passOn) super.sendError(sc);
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			captured.sent = true;
+			captured.status = sc;
+			if (passOn) super.sendError(sc, msg);
+		}
+
+		@Override
+		public void sendRedirect(String location) throws IOException {
+			captured.sent = true;
+			captured.status = HttpServletResponse.SC_MOVED_TEMPORARILY;
+			if (passOn) super.sendRedirect(location);
+		}
+
+		@Override
+		public void addCookie(Cookie cookie) {
+			captured.cacheable = false;
+			if (passOn) super.addCookie(cookie);
+		}
+
+		@Override
+		public void setContentType(String type) {
+			captured.contentType = type;
+		}
+
+		@Override
+		public void setContentLength(int len) {
+			// set when writing the captured response
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			removeHeader(name);
+			addHeader(name, value);
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			if ("Set-Cookie".equalsIgnoreCase(name)) {
+				captured.cacheable = false;
+				if (passOn) super.addHeader(name, value);
+				return;
+			}
+			captured.headers.add(new String[] {name, value});
+		}
+
+		@Override
+		public void setIntHeader(String name, int value) {
+			setHeader(name, String.valueOf(value));
+		}
+
+		@Override
+		public void addIntHeader(String name, int value) {
+			addHeader(name, String.valueOf(value));
+		}
+
+		@Override
+		public void setDateHeader(String name, long date) {
+			setHeader(name, formatDate(date));
+		}
+
+		@Override
+		public void addDateHeader(String name, long date) {
+			addHeader(name, formatDate(date));
+		}
+
+		@Override
+		public boolean containsHeader(String name) {
+			return captured.getHeader(name) != null;
+		}
+
+		@Override
+		public boolean isCommitted() {
+			return captured.sent;
+		}
+
+		@Override
+		public void flushBuffer() {
+		}
+
+		@Override
+		public void reset() {
+			resetBuffer();
+			captured.status = HttpServletResponse.SC_OK;
+			captured.contentType = null;
+			captured.headers.clear();
+		}
+
+		@Override
+		public void resetBuffer() {
+			if (writer != null) {
+				writer.flush();
+			}
+			bytes.reset();
+		}
+
+		private void removeHeader(String name) {
+			for (Iterator<String[]> it = captured.headers.iterator(); it.hasNext(); ) {
+				if (it.next()[0].equalsIgnoreCase(name)) {
+					it.remove();
+				}
+			}
+		}
+
+		private static String formatDate(long date) {
+			return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(date).atZone(ZoneOffset.UTC));
+		}
+	}
+
+	/** Default for how long requests wait for a response being rendered by another request */
+	public final static long DEFAULT_MAX_WAIT_MILLIS = 10000;
+
+	private final long maxBytes;
+	private final long maxWaitMillis;
+	private long bytes;
+	private final Map<Key, CachedResponse> responses = new LinkedHashMap<Key, CachedResponse>(16, 0.75f, true);
+	private final Map<Key, CompletableFuture<CachedResponse>> rendering = new ConcurrentHashMap<Key, CompletableFuture<CachedResponse>>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param maxBytes max. total size of the cached bodies
+	 */
+	public ResponseCache(long maxBytes) {
+		this(maxBytes, DEFAULT_MAX_WAIT_MILLIS);
+	}
+
+	/**
+	 * @param maxBytes max. total size of the cached bodies
+	 * @param maxWaitMillis max. time to wait for a response being rendered by another request, before rendering it again
+	 */
+	public ResponseCache(long maxBytes, long maxWaitMillis) {
+		this.maxBytes = maxBytes;
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * Gets cached response or renders it.
+	 * If the response for the same key is being rendered by another thread, waits for that and uses its result if it is cacheable.
+	 * If that takes too long, the response is rendered (but not cached) by this thread as well.
+	 * @param key
+	 * @param ttlSeconds time to live of a newly rendered response
+	 * @param renderer
+	 * @return the response, never null
+	 * @throws Exception from the renderer
+	 */
+	public CachedResponse get(Key key, int ttlSeconds, Renderer renderer) throws Exception {
+		CachedResponse response = lookup(key);
+		if (response != null) {
+			hits.incrementAndGet();
+			return response;
+		}
+		CompletableFuture<CachedResponse> future = new CompletableFuture<CachedResponse>();
+		CompletableFuture<CachedResponse> running = rendering.putIfAbsent(key, future);
+		if (running != null) {
+			try {
+				response = running.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				response = null;
+			}
+			if (response != null && response.isCacheable()) {
+				hits.incrementAndGet();
+				return response;
+			}
+			return renderer.render();
+		}
+		misses.incrementAndGet();
+		try {
+			response = renderer.render();
+			if (response.isCacheable()) {
+				response.expiresAt = System.currentTimeMillis() + ttlSeconds * 1000L;
+				put(key, response);
+			}
+			return response;
+		} finally {
+			future.complete(response);
+			rendering.remove(key, future);
+		}
+	}
+
+	private synchronized CachedResponse lookup(Key key) {
+		CachedResponse response = responses.get(key);
+		if (response != null && response.expiresAt < System.currentTimeMillis()) {
+			remove(key);
+			return null;
+		}
+		return response;
+	}
+
+	private synchronized void put(Key key, CachedResponse response) {
+		if (response.getSize() > maxBytes) {
+			return;
+		}
+		remove(key);
+		responses.put(key, response);
+		bytes += response.getSize();
+		for (Iterator<CachedResponse> it = responses.values().iterator(); bytes > maxBytes && it.hasNext(); ) {
+			bytes -= it.next().getSize();
+			it.remove();
+		}
+	}
+
+	private void remove(Key key) {
+		CachedResponse removed = responses.remove(key);
+		if (removed != null) {
+			bytes -= removed.getSize();
+		}
+	}
+
+	/**
+	 * Removes cached responses of an action.
+	 * @param controllerClass
+	 * @param actionName name of the action method
+	 * @param optionalParamsAndValues names and values of parameters (as specified by varyBy); only responses for these values are removed
+	 * @return number of responses removed
+	 */
+	public synchronized int invalidate(Class<? extends BaseController> controllerClass, String actionName, String... optionalParamsAndValues) {
+		int count = 0;
+		for (Iterator<Map.Entry<Key, CachedResponse>> it = responses.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<Key, CachedResponse> e = it.next();
+			if (e.getKey().matches(controllerClass, actionName, optionalParamsAndValues)) {
+				bytes -= e.getValue().getSize();
+				it.remove();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Removes all cached responses.
+	 */
+	public synchronized void clear() {
+		responses.clear();
+		bytes = 0;
+	}
+
+	/** @return number of responses currently cached */
+	public synchronized int getSize() {
+		return responses.size();
+	}
+
+	/** @return total size of the bodies currently cached */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/** @return hits / (hits + misses) or 0 if there was no request yet */
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double)h / total;
+	}
+}
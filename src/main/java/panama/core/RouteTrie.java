@@ -0,0 +1,141 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable, char-indexed trie used by the {@link Dispatcher} to resolve controller and action names.
+ * It is built once at startup and afterwards only read from, so it is safe to be used by many threads.
+ *
+ * Lookups work directly on a region of a CharSequence (i.e. the servlet path), so no substrings
+ * have to be created to find a controller or action.
+ *
+ * @author ridcully
+ */
+final class RouteTrie<V> {
+
+	private final static char[] NO_CHARS = new char[0];
+
+	private final Node<V> root;
+	private final int size;
+
+	/**
+	 * Creates trie containing all entries of the given map.
+	 * @param entries mapping of names to values; null keys or values are ignored.
+	 */
+	RouteTrie(Map<String, V> entries) {
+		Builder<V> rootBuilder = new Builder<V>();
+		int count = 0;
+		for (Map.Entry<String, V> e : entries.entrySet()) {
+			if (e.getKey() == null || e.getValue() == null) continue;
+			Builder<V> b = rootBuilder;
+			String key = e.getKey();
+			for (int i = 0; i < key.length(); i++) {
+				b = b.child(key.charAt(i));
+			}
+			b.value = e.getValue();
+			count++;
+		}
+		root = rootBuilder.build();
+		size = count;
+	}
+
+	/**
+	 * Gets value for the name found in given region of s.
+	 * @param s some chars
+	 * @param start index of first char of the name
+	 * @param end index after last char of the name
+	 * @return the value or null if there is none for this name
+	 */
+	V get(CharSequence s, int start, int end) {
+		Node<V> node = root;
+		for (int i = start; i < end && node != null; i++) {
+			node = node.child(s.charAt(i));
+		}
+		return node != null ? node.value : null;
+	}
+
+	/**
+	 * Gets value for given name.
+	 * @param name
+	 * @return the value or null if there is none for this name or the name is null
+	 */
+	V get(String name) {
+		return name != null ? get(name, 0, name.length()) : null;
+	}
+
+	/**
+	 * @return number of entries
+	 */
+	int size() {
+		return size;
+	}
+
+	private final static class Node<V> {
+		final char[] chars;
+		final Node<V>[] children;
+		final V value;
+
+		Node(char[] chars, Node<V>[] children, V value) {
+			this.chars = chars;
+			this.children = children;
+			this.value = value;
+		}
+
+		Node<V> child(char c) {
+			int idx = Arrays.binarySearch(chars, c);
+			return idx < 0 ? null : children[idx];
+		}
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <V> Node<V>[] newNodes(int size) {
+		return new Node[size];
+	}
+
+	/** mutable node used while building the trie */
+	private final static class Builder<V> {
+		final TreeMap<Character, Builder<V>> children = new TreeMap<Character, Builder<V>>();
+		V value;
+
+		Builder<V> child(char c) {
+			Builder<V> b = children.get(c);
+			if (b == null) {
+				b = new Builder<V>();
+				children.put(c, b);
+			}
+			return b;
+		}
+
+		Node<V> build() {
+			if (children.isEmpty()) {
+				return new Node<V>(NO_CHARS, RouteTrie.<V>newNodes(0), value);
+			}
+			char[] chars = new char[children.size()];
+			Node<V>[] nodes = newNodes(children.size());
+			int i = 0;
+			for (Map.Entry<Character, Builder<V>> e : children.entrySet()) {
+				chars[i] = e.getKey();
+				nodes[i] = e.getValue().build();
+				i++;
+			}
+			return new Node<V>(chars, nodes, value);
+		}
+	}
+}
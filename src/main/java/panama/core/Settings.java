@@ -0,0 +1,223 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.lang.StringUtils;
+
+import panama.log.SimpleLogger;
+import panama.util.Configuration;
+
+/**
+ * Immutable snapshot of the framework settings, parsed once so they can be read as plain fields while handling requests.
+ *
+ * Settings are taken from the init parameters of the Dispatcher (see the PARAM_ constants there) or, if not specified there,
+ * from the properties of {@link Configuration}. When the configuration is reloaded via {@link Dispatcher#reloadConfiguration()},
+ * a new snapshot replaces the current one at once. Settings that determine the size of the caches, the number of tile threads,
+ * the languages, the tracing buffer and production mode only take effect at startup.
+ *
+ * @author ridcully
+ */
+public final class Settings {
+
+	protected static SimpleLogger log = new SimpleLogger(Settings.class);
+
+	/** settings used if the Dispatcher was not initialized, e.g. in unit tests */
+	public final static Settings DEFAULTS = new Settings(Collections.<String, String>emptyMap(), new Properties());
+
+	private final Map<String, String> params;
+	private final Properties properties;
+
+	private final boolean production;
+	private final int templateCacheSize;
+	private final int templateCacheCheckInterval;
+	private final int outputBufferSize;
+	private final boolean compression;
+	private final int compressionMinSize;
+	private final int compressionLevel;
+	private final long responseCacheSize;
+	private final int tilesThreads;
+	private final int tilesTimeout;
+	private final int asyncTimeout;
+	private final long maxFileUploadSize;
+	private final double tracingSampleRate;
+	private final int tracingSlow;
+	private final int tracingBuffer;
+	private final int tableParallelThreshold;
+	private final boolean systemDiagnostics;
+	private final List<String> languages;
+
+	/**
+	 * @param params init parameters
+	 * @param properties properties to use for settings not specified as init parameters
+	 */
+	public Settings(Map<String, String> params, Properties properties) {
+		this.params = params;
+		this.properties = properties;
+		production = getBoolean(Dispatcher.PARAM_PRODUCTION);
+		templateCacheSize = getInt(Dispatcher.PARAM_TEMPLATECACHE_SIZE, 1000);
+		templateCacheCheckInterval = getInt(Dispatcher.PARAM_TEMPLATECACHE_CHECKINTERVAL, -1);
+		outputBufferSize = 1024 * Math.max(0, getInt(Dispatcher.PARAM_OUTPUTBUFFER_SIZE, 0));
+		compression = getBoolean(Dispatcher.PARAM_COMPRESSION);
+		compressionMinSize = Math.max(0, getInt(Dispatcher.PARAM_COMPRESSION_MINSIZE, 1024));
+		compressionLevel = Math.min(9, Math.max(1, getInt(Dispatcher.PARAM_COMPRESSION_LEVEL, 6)));
+		responseCacheSize = 1024L * getInt(Dispatcher.PARAM_RESPONSECACHE_SIZE, 10240);
+		tilesThreads = Math.max(1, getInt(Dispatcher.PARAM_TILES_THREADS, 16));
+		tilesTimeout = getInt(Dispatcher.PARAM_TILES_TIMEOUT, 5000);
+		asyncTimeout = getInt(Dispatcher.PARAM_ASYNC_TIMEOUT, 30000);
+		maxFileUploadSize = 1024L * 1024L * getInt(Dispatcher.PARAM_MAXFILEUPLOADSIZE, 1);
+		tracingSampleRate = Math.min(1, Math.max(0, getDouble(Dispatcher.PARAM_TRACING_SAMPLERATE, 0)));
+		tracingSlow = Math.max(0, getInt(Dispatcher.PARAM_TRACING_SLOW, 1000));
+		tracingBuffer = Math.max(1, getInt(Dispatcher.PARAM_TRACING_BUFFER, 50));
+		tableParallelThreshold = Math.max(0, getInt(Dispatcher.PARAM_TABLE_PARALLELTHRESHOLD, 10000));
+		systemDiagnostics = getBoolean(Dispatcher.PARAM_SYSTEM_DIAGNOSTICS);
+		String s = get(Dispatcher.PARAM_LANGUAGES);
+		String[] supported = StringUtils.isBlank(s) ? new String[0] : s.trim().split("\\s*,\\s*");
+		languages = Collections.unmodifiableList(Arrays.asList(supported.length > 0 ? supported : new String[] {"en"}));
+	}
+
+	private String get(String key) {
+		String value = params.get(key);
+		return value != null ? value : properties.getProperty(key);
+	}
+
+	private int getInt(String key, int defaultValue) {
+		String s = get(key);
+		if (StringUtils.isEmpty(s)) return defaultValue;
+		try {
+			return Integer.parseInt(s.trim());
+		} catch (NumberFormatException e) {
+			log.warn("Setting "+key+" is not a number: "+s);
+			return defaultValue;
+		}
+	}
+
+	private double getDouble(String key, double defaultValue) {
+		String s = get(key);
+		if (StringUtils.isEmpty(s)) return defaultValue;
+		try {
+			return Double.parseDouble(s.trim());
+		} catch (NumberFormatException e) {
+			log.warn("Setting "+key+" is not a number: "+s);
+			return defaultValue;
+		}
+	}
+
+	/** whether value is one of {@link Configuration#BOOLEAN_TRUE} */
+	private boolean getBoolean(String key) {
+		String value = get(key);
+		if (value == null) return false;
+		for (String s : Configuration.BOOLEAN_TRUE) {
+			if (s.equalsIgnoreCase(value.trim())) return true;
+		}
+		return false;
+	}
+
+	/** @return whether templates are precompiled and cached */
+	public boolean isProduction() {
+		return production;
+	}
+
+	/** @return max. number of templates to cache */
+	public int getTemplateCacheSize() {
+		return templateCacheSize;
+	}
+
+	/** @return interval in seconds for checking cached templates for modifications, 0 or less to never check */
+	public int getTemplateCacheCheckInterval() {
+		return templateCacheCheckInterval;
+	}
+
+	/** @return max. number of bytes of output to buffer, 0 if output should not be buffered */
+	public int getOutputBufferSize() {
+		return outputBufferSize;
+	}
+
+	/** @return whether output of targets should be compressed if the client accepts it */
+	public boolean isCompression() {
+		return compression;
+	}
+
+	/** @return min. number of bytes of output to compress */
+	public int getCompressionMinSize() {
+		return compressionMinSize;
+	}
+
+	/** @return compression level 1-9 */
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/** @return max. total number of bytes of cached responses */
+	public long getResponseCacheSize() {
+		return responseCacheSize;
+	}
+
+	/** @return max. number of tiles rendered concurrently in the background */
+	public int getTilesThreads() {
+		return tilesThreads;
+	}
+
+	/** @return default time in ms to wait for a tile rendered in the background */
+	public int getTilesTimeout() {
+		return tilesTimeout;
+	}
+
+	/** @return default time in ms to wait for the target of an {@link AsyncTarget} */
+	public int getAsyncTimeout() {
+		return asyncTimeout;
+	}
+
+	/** @return max. size in bytes of multipart requests */
+	public long getMaxFileUploadSize() {
+		return maxFileUploadSize;
+	}
+
+	/** @return fraction of requests to trace, from 0 to 1 */
+	public double getTracingSampleRate() {
+		return tracingSampleRate;
+	}
+
+	/** @return min. duration in ms of traces to keep */
+	public int getTracingSlow() {
+		return tracingSlow;
+	}
+
+	/** @return number of slow traces to keep */
+	public int getTracingBuffer() {
+		return tracingBuffer;
+	}
+
+	/** @return min. number of rows of in-memory tables to filter and sort in parallel, 0 for never */
+	public int getTableParallelThreshold() {
+		return tableParallelThreshold;
+	}
+
+	/** @return whether the diagnostics actions of the {@link SystemController} are enabled */
+	public boolean isSystemDiagnostics() {
+		return systemDiagnostics;
+	}
+
+	/** @return ISO language codes of the supported languages, the first one is the fallback */
+	public List<String> getLanguages() {
+		return languages;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.core;
+
+import java.io.Writer;
+
+import panama.json.JSONArray;
+import panama.json.JSONObject;
+import panama.json.JSONWriter;
+
+/**
+ * Writes json directly to the response, without converting it to a string first.
+ * Unlike {@link JsonTarget} the json is serialized when going to the target, so changes made to it after creating the target are included.
+ *
+ * For large results, use {@link #StreamingJsonTarget(Source)} to write the json step by step with a {@link JSONWriter},
+ * so it never has to exist as a whole in memory:
+ * <pre>
+ * return new StreamingJsonTarget(w -&gt; {
+ *     w.array();
+ *     for (Entry e : entries) {
+ *         w.object().key("id").value(e.getId()).endObject();
+ *     }
+ *     w.endArray();
+ * });
+ * </pre>
+ * @author ridcully
+ */
+public class StreamingJsonTarget extends Target {
+
+	/**
+	 * Writes json to the response.
+	 */
+	public interface Source {
+		/**
+		 * @param writer writer to the response, the first method called must be array() or object()
+		 */
+		void write(JSONWriter writer) throws Exception;
+	}
+
+	private JSONObject object;
+	private JSONArray array;
+	private Source source;
+
+	public StreamingJsonTarget(JSONObject json) {
+		this(0, json);
+	}
+
+	public StreamingJsonTarget(JSONArray json) {
+		this(0, json);
+	}
+
+	public StreamingJsonTarget(Source source) {
+		this(0, source);
+	}
+
+	public StreamingJsonTarget(int statusCode, JSONObject json) {
+		super(statusCode);
+		this.object = json;
+	}
+
+	public StreamingJsonTarget(int statusCode, JSONArray json) {
+		super(statusCode);
+		this.array = json;
+	}
+
+	public StreamingJsonTarget(int statusCode, Source source) {
+		super(statusCode);
+		this.source = source;
+	}
+
+	@Override
+	public void go() throws Exception {
+		applyStatusCode();
+		if (isNotModified()) {
+			return;
+		}
+		Context ctx = Context.getInstance();
+		ctx.getResponse().setContentType("application/json; charset=UTF-8");
+		Writer writer = ctx.getResponse().getWriter();
+		if (object != null) {
+			object.write(writer);
+		} else if (array != null) {
+			array.write(writer);
+		} else if (source != null) {
+			source.write(new JSONWriter(writer));
+		}
+	}
+}
@@ -15,23 +15,193 @@
  */
 package panama.core;
 
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
 import panama.annotations.Action;
 import panama.annotations.Controller;
+import panama.collections.Table;
+import panama.exceptions.AuthorizationException;
 import panama.exceptions.ForceTargetException;
+import panama.exceptions.HttpErrorException;
+import panama.json.JSONWriter;
 
 /**
  * An internal controller providing actions to gather some information.
+ * The diagnostics actions (metrics, prometheus, traces, diagnostics) reveal internals of the application,
+ * they respond with 404 (Not Found) unless enabled by {@link Dispatcher#PARAM_SYSTEM_DIAGNOSTICS}.
  * @author Ridcully
  *
  */
 @Controller(alias="system", defaultAction="info")
 public class SystemController extends BaseController {
 
+	/** number of slowest actions listed by {@link #diagnostics()} */
+	private final static int SLOWEST_ACTIONS = 10;
+
+	/** actions available only if {@link #isDiagnosticsAllowed()} */
+	private final static Set<String> DIAGNOSTICS_ACTIONS = new HashSet<String>(Arrays.asList("metrics", "prometheus", "traces", "diagnostics"));
+
 	public SystemController() {
 	}
 
+	@Override
+	public void beforeAction(String actionName) throws ForceTargetException, AuthorizationException {
+		if (DIAGNOSTICS_ACTIONS.contains(actionName) && !isDiagnosticsAllowed()) {
+			throw new HttpErrorException(HttpServletResponse.SC_NOT_FOUND);
+		}
+	}
+
+	/**
+	 * Checks access to the diagnostics actions.
+	 * Default implementation allows them if {@link Dispatcher#PARAM_SYSTEM_DIAGNOSTICS} is set, for everyone who can reach the application;
+	 * overwrite it to restrict access further, e.g. to certain users or addresses.
+	 * @return whether the diagnostics actions may be used in the current request
+	 */
+	protected boolean isDiagnosticsAllowed() {
+		return getContext().getCore().getSettings().isSystemDiagnostics();
+	}
+
 	@Action
 	public Target info() throws ForceTargetException {
 		return new PlainTextTarget(Version.LOGO_ASCIIART+"\n Uptime: "+context.getCore().getFormattedUptime());
 	}	
+
+	/**
+	 * Request metrics as JSON, durations in milliseconds.
+	 */
+	@Action(stateless=true)
+	public Target metrics() {
+		return new JsonTarget(context.getCore().getMetrics().toJSON());
+	}
+
+	/**
+	 * Request metrics in the Prometheus text format, durations in seconds.
+	 */
+	@Action(stateless=true)
+	public Target prometheus() {
+		return new PlainTextTarget(context.getCore().getMetrics().toPrometheus());
+	}
+
+	/**
+	 * Recent slow traces of sampled requests as JSON, durations in milliseconds.
+	 * @see Dispatcher#PARAM_TRACING_SAMPLERATE
+	 */
+	@Action(stateless=true)
+	public Target traces() {
+		return new JsonTarget(context.getCore().getTracer().toJSON());
+	}
+
+	/**
+	 * JVM, cache and framework statistics as JSON, durations in milliseconds, sizes in bytes.
+	 * Everything is collected while the json is written, nothing is recorded for this in advance.
+	 */
+	@Action(stateless=true)
+	public Target diagnostics() {
+		final Dispatcher core = context.getCore();
+		final HttpSession session = context.getRequest().getSession(false);
+		return new StreamingJsonTarget(w -> {
+			w.object();
+			w.key("uptime").value(core.getFormattedUptime());
+			writeJvm(w);
+			w.key("routes").object()
+				.key("controllers").value(core.getControllerCount())
+				.key("actions").value(core.getActionCount())
+				.endObject();
+			TemplateCache templateCache = core.getTemplateCache();
+			w.key("templateCache");
+			if (templateCache != null) {
+				w.object()
+					.key("size").value(templateCache.getSize())
+					.key("hits").value(templateCache.getHitCount())
+					.key("misses").value(templateCache.getMissCount())
+					.key("hitRate").value(templateCache.getHitRate())
+					.key("parsed").value(templateCache.getParsedCount())
+					.key("parseTime").value(Metrics.millis(templateCache.getParseTimeNanos()))
+					.endObject();
+			} else {
+				w.value(null);
+			}
+			ResponseCache responseCache = core.getResponseCache();
+			w.key("responseCache");
+			if (responseCache != null) {
+				w.object()
+					.key("size").value(responseCache.getSize())
+					.key("bytes").value(responseCache.getBytes())
+					.key("maxBytes").value(responseCache.getMaxBytes())
+					.key("hits").value(responseCache.getHitCount())
+					.key("misses").value(responseCache.getMissCount())
+					.key("hitRate").value(responseCache.getHitRate())
+					.endObject();
+			} else {
+				w.value(null);
+			}
+			w.key("templates").value(Metrics.toJSON(core.getMetrics().getTemplates()));
+			w.key("slowestActions").array();
+			for (Metrics.ActionMetrics m : core.getMetrics().getSlowest(SLOWEST_ACTIONS)) {
+				w.object()
+					.key("action").value(m.getName())
+					.key("requests").value(m.getRequests())
+					.key("inFlight").value(m.getInFlight())
+					.key("execute").value(Metrics.toJSON(m.getExecute()))
+					.key("render").value(Metrics.toJSON(m.getRender()))
+					.endObject();
+			}
+			w.endArray();
+			w.key("sessionTables").array();
+			@SuppressWarnings("unchecked")
+			Map<String, Table> tables = session != null ? (Map<String, Table>)session.getAttribute(TABLEMAP_KEY) : null;
+			if (tables != null) {
+				for (Table table : tables.values()) {
+					w.object()
+						.key("key").value(table.getKey())
+						.key("model").value(table.getModel() != null ? table.getModel().getClass().getName() : null)
+						.endObject();
+				}
+			}
+			w.endArray();
+			w.endObject();
+		});
+	}
+
+	private void writeJvm(JSONWriter w) {
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		w.key("jvm").object();
+		w.key("processors").value(Runtime.getRuntime().availableProcessors());
+		w.key("heap").object()
+			.key("used").value(heap.getUsed())
+			.key("committed").value(heap.getCommitted())
+			.key("max").value(heap.getMax())
+			.endObject();
+		w.key("nonHeap").object()
+			.key("used").value(nonHeap.getUsed())
+			.key("committed").value(nonHeap.getCommitted())
+			.endObject();
+		w.key("gc").array();
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			w.object()
+				.key("name").value(gc.getName())
+				.key("count").value(gc.getCollectionCount())
+				.key("time").value(gc.getCollectionTime())
+				.endObject();
+		}
+		w.endArray();
+		w.key("threads").object()
+			.key("live").value(threads.getThreadCount())
+			.key("daemon").value(threads.getDaemonThreadCount())
+			.key("peak").value(threads.getPeakThreadCount())
+			.endObject();
+		w.endObject();
+	}
 }
@@ -15,6 +15,14 @@
  */
 package panama.core;
 
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Locale;
+
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import panama.log.SimpleLogger;
@@ -23,16 +31,36 @@ import panama.log.SimpleLogger;
 /**
  * Targets are returned by Controller#render() and Controller#redirect()
  * The target is interpreted by the Dispatcher
+ *
+ * Targets support conditional GET requests: if an ETag (see {@link #setETag(String)}, {@link #setWeakETag(String)})
+ * or last modification date (see {@link #setLastModified(Date)}) is set, and the request's If-None-Match or
+ * If-Modified-Since header matches, {@link #isNotModified()} sends 304 (Not Modified) and the target is not rendered at all.
+ * E.g. for a view of a persistent bean:
+ * <pre>
+ * Target t = render("view.vm");
+ * t.setWeakETag(bean.getId() + "-" + bean.getTimeStamp().getTime());
+ * return t;
+ * </pre>
+ * Alternatively {@link #setComputeETag(boolean)} computes an ETag from the rendered output;
+ * this saves the bandwidth but not the rendering.
+ *
  * @author Robert
  */
 abstract public class Target {
 
 	protected static SimpleLogger log = new SimpleLogger(Target.class);
 
+	/** max. size of output buffered for computing an ETag or compressing it, if output buffering is not configured */
+	protected final static int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
 	// a value of 0 makes the target _not_ set the status in the go() method, thus allowing
 	// direct modification of the context.response (for backward compatibility and special usecases)
 	protected int statusCode = 0; 
 
+	private String etag;
+	private Date lastModified;
+	private boolean computeETag;
+
 	public Target() {
 	}
 
@@ -54,6 +82,53 @@ abstract public class Target {
 		return statusCode;
 	}
 	
+	/**
+	 * Sets strong ETag supplied by the controller, e.g. a version number of the rendered data.
+	 * Strong ETags must only match if the output is byte-for-byte identical.
+	 * @param versionKey without quotes; null to remove the ETag
+	 */
+	public void setETag(String versionKey) {
+		this.etag = versionKey != null ? quote(versionKey) : null;
+	}
+
+	/**
+	 * Sets weak ETag supplied by the controller, e.g. id and timestamp of the rendered persistent bean.
+	 * Weak ETags match if the output is semantically equivalent.
+	 * @param versionKey without quotes; null to remove the ETag
+	 */
+	public void setWeakETag(String versionKey) {
+		this.etag = versionKey != null ? "W/" + quote(versionKey) : null;
+	}
+
+	public String getETag() {
+		return etag;
+	}
+
+	/**
+	 * Sets date of last modification of the rendered data, e.g. {@link panama.persistence.PersistentBean#getTimeStamp()}
+	 * @param lastModified null to remove it
+	 */
+	public void setLastModified(Date lastModified) {
+		this.lastModified = lastModified;
+	}
+
+	public Date getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Sets whether to compute a strong ETag from the rendered output, if no ETag was set by the controller.
+	 * The output is rendered into a {@link BufferedResponseWriter}, output exceeding its limit gets no ETag.
+	 * @param computeETag
+	 */
+	public void setComputeETag(boolean computeETag) {
+		this.computeETag = computeETag;
+	}
+
+	public boolean isComputeETag() {
+		return computeETag;
+	}
+
 	/**
 	 * Applies status code set with {@link #setStatusCode(int)} when actually going to target.
 	 * Make sure to invoke this in your implementation of {@link #go()}.
@@ -65,10 +140,214 @@ abstract public class Target {
 		}
 	}
 
+	/**
+	 * Sets ETag and Last-Modified headers as specified by the controller and checks the request's preconditions.
+	 * If the response would not be modified, sends 304 (Not Modified).
+	 * Invoke this in your implementation of {@link #go()} after {@link #applyStatusCode()}, and return immediately if it returns true.
+	 * @return true if 304 was sent and nothing must be rendered
+	 */
+	protected boolean isNotModified() {
+		if (etag == null && lastModified == null) {
+			return false;
+		}
+		Context ctx = Context.getInstance();
+		if (ctx == null || ctx.getResponse() == null || !isConditional(ctx.getRequest())) {
+			return false;
+		}
+		HttpServletRequest req = ctx.getRequest();
+		HttpServletResponse res = ctx.getResponse();
+		if (etag != null) {
+			res.setHeader("ETag", etag);
+		}
+		if (lastModified != null) {
+			res.setDateHeader("Last-Modified", lastModified.getTime());
+		}
+		String ifNoneMatch = req.getHeader("If-None-Match");
+		boolean notModified;
+		if (ifNoneMatch != null) {
+			notModified = etag != null && matches(ifNoneMatch, etag);
+		} else {
+			notModified = lastModified != null && isNotModifiedSince(req, lastModified.getTime());
+		}
+		if (notModified) {
+			res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		}
+		return notModified;
+	}
+
+	/**
+	 * Writes buffered output to the response, computing an ETag first if {@link #setComputeETag(boolean)} was set.
+	 * If the computed ETag matches the request's If-None-Match header, 304 (Not Modified) is sent instead.
+	 * @param writer
+	 * @throws IOException
+	 */
+	protected void finish(BufferedResponseWriter writer) throws IOException {
+		Context ctx = Context.getInstance();
+		if (computeETag && etag == null && !writer.isStreaming() && isConditional(ctx.getRequest())) {
+			String compression = writer.getCompression();
+			String computed = quote(digest(writer) + (compression != null ? "-" + compression : ""));	// encodings must not share strong ETags
+			ctx.getResponse().setHeader("ETag", computed);
+			String ifNoneMatch = ctx.getRequest().getHeader("If-None-Match");
+			if (ifNoneMatch != null && matches(ifNoneMatch, computed)) {
+				ctx.getResponse().setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+		}
+		writer.finish();
+	}
+
+	/**
+	 * Gets max. number of bytes to buffer when rendering.
+	 * @return {@link Dispatcher#getOutputBufferSize()} or {@link #DEFAULT_BUFFER_SIZE} if that is not set but an ETag must be computed
+	 * 			or compression is enabled; 0 if output should not be buffered
+	 */
+	protected int getBufferSize() {
+		Dispatcher core = Context.getInstance().getCore();
+		int size = core.getOutputBufferSize();
+		return size == 0 && (computeETag || core.isCompression()) ? DEFAULT_BUFFER_SIZE : size;
+	}
+
+	/**
+	 * Opens the {@link BufferedResponseWriter}, with compression as negotiated by the request's Accept-Encoding header, if enabled.
+	 * @param limit max. number of bytes to buffer
+	 * @return the writer, make sure to close it
+	 */
+	protected BufferedResponseWriter openWriter(int limit) {
+		Context ctx = Context.getInstance();
+		Dispatcher core = ctx.getCore();
+		int configured = core.getOutputBufferSize();
+		BufferedResponseWriter writer = BufferedResponseWriter.open(ctx.getResponse(), limit, configured > 0 ? configured : DEFAULT_BUFFER_SIZE);
+		if (core.isCompression()) {
+			ctx.getResponse().setHeader("Vary", "Accept-Encoding");
+			writer.setCompression(negotiateEncoding(ctx.getRequest().getHeader("Accept-Encoding")), core.getCompressionMinSize(), core.getCompressionLevel());
+		}
+		return writer;
+	}
+
+	/**
+	 * Writes text to the response. The text is buffered and sent with Content-Length (and compressed) if
+	 * {@link #getBufferSize()} is greater 0.
+	 * Within an enclosing rendering (e.g. tiles), the text is written into its buffer.
+	 * @param text
+	 * @throws IOException
+	 */
+	protected void write(String text) throws IOException {
+		Context ctx = Context.getInstance();
+		BufferedResponseWriter active = BufferedResponseWriter.getActive();
+		if (active != null) {
+			active.write(text);
+			return;
+		}
+		int bufferSize = getBufferSize();
+		if (bufferSize > 0) {
+			BufferedResponseWriter writer = openWriter(bufferSize);	// longer text is streamed, like templates
+			try {
+				writer.write(text);
+				finish(writer);
+			} finally {
+				writer.close();
+			}
+		} else {
+			ctx.getResponse().getWriter().write(text);
+		}
+	}
+
+	/** only GET and HEAD requests with success status may result in 304 */
+	private boolean isConditional(HttpServletRequest req) {
+		if (req == null || (statusCode != 0 && statusCode != HttpServletResponse.SC_OK)) {
+			return false;
+		}
+		String method = req.getMethod();
+		return method == null || "GET".equals(method) || "HEAD".equals(method);
+	}
+
+	/**
+	 * Chooses content encoding, preferring gzip over deflate.
+	 * @param acceptEncoding value of Accept-Encoding header, may be null
+	 * @return {@link BufferedResponseWriter#GZIP}, {@link BufferedResponseWriter#DEFLATE} or null
+	 */
+	static String negotiateEncoding(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return null;
+		}
+		double gzip = -1;
+		double deflate = -1;
+		double any = -1;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] tokens = coding.split(";");
+			String name = tokens[0].trim().toLowerCase(Locale.ROOT);
+			double q = 1;
+			for (int i = 1; i < tokens.length; i++) {
+				String param = tokens[i].trim();
+				if (param.startsWith("q=")) {
+					try {
+						q = Double.parseDouble(param.substring(2));
+					} catch (NumberFormatException e) {
+						q = 0;
+					}
+				}
+			}
+			if (name.equals("gzip") || name.equals("x-gzip")) {
+				gzip = q;
+			} else if (name.equals("deflate")) {
+				deflate = q;
+			} else if (name.equals("*")) {
+				any = q;
+			}
+		}
+		if (gzip < 0) gzip = any;
+		if (deflate < 0) deflate = any;
+		if (gzip > 0 && gzip >= deflate) {
+			return BufferedResponseWriter.GZIP;
+		}
+		return deflate > 0 ? BufferedResponseWriter.DEFLATE : null;
+	}
+
+	/** weak comparison of If-None-Match header with etag as required by RFC 7232 */
+	static boolean matches(String ifNoneMatch, String etag) {
+		String opaque = stripWeak(etag);
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.equals("*") || stripWeak(candidate).equals(opaque)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String stripWeak(String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+
+	private static boolean isNotModifiedSince(HttpServletRequest req, long lastModified) {
+		long ifModifiedSince;
+		try {
+			ifModifiedSince = req.getDateHeader("If-Modified-Since");
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		// header has seconds precision only
+		return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+	}
+
+	private static String quote(String s) {
+		return "\"" + s.replace("\"", "") + "\"";
+	}
+
+	private static String digest(BufferedResponseWriter writer) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			writer.update(md);
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(md.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);	// every Java platform must support MD5
+		}
+	}
+
 	/**
 	 * Goes to the target.
 	 *
-	 * Make sure to call {@link #applyStatusCode()} in your implementation of this method.
+	 * Make sure to call {@link #applyStatusCode()} and {@link #isNotModified()} in your implementation of this method.
 	 */
 	abstract public void go() throws Exception;
 }
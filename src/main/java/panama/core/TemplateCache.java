@@ -0,0 +1,218 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.core;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.app.VelocityEngine;
+
+import panama.log.SimpleLogger;
+
+/**
+ * Bounded cache of parsed Velocity templates, used by the Dispatcher in production mode.
+ *
+ * If a check interval is set, cached templates are checked for modifications at most once per interval and parsed again if modified.
+ * As the ClasspathResourceLoader does not support modification checks, templates found as files on the class path are checked
+ * by their last modified time; templates in jar files are never considered modified with that loader.
+ *
+ * @author ridcully
+ */
+public class TemplateCache {
+
+	protected static SimpleLogger log = new SimpleLogger(TemplateCache.class);
+
+	private final static String ENCODING = "UTF-8";
+
+	private static class CachedTemplate {
+		final Template template;
+		/** the template's file on the class path or null */
+		final File file;
+		final long lastModified;
+		volatile long checkedAt;
+
+		CachedTemplate(Template template, File file, long lastModified, long checkedAt) {
+			this.template = template;
+			this.file = file;
+			this.lastModified = lastModified;
+			this.checkedAt = checkedAt;
+		}
+
+		boolean isModified() {
+			return template.isSourceModified() || (file != null && file.lastModified() != lastModified);
+		}
+	}
+
+	private final VelocityEngine engine;
+	private final long checkIntervalMillis;
+	private final Map<String, CachedTemplate> templates;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong parsed = new AtomicLong();
+	private final AtomicLong parseTimeNanos = new AtomicLong();
+
+	/**
+	 * @param engine the engine to parse templates with
+	 * @param maxSize max. number of templates to keep, least recently used ones are removed first
+	 * @param checkIntervalSeconds interval for checking templates for modifications; 0 or less to never check
+	 */
+	public TemplateCache(VelocityEngine engine, final int maxSize, int checkIntervalSeconds) {
+		this.engine = engine;
+		this.checkIntervalMillis = checkIntervalSeconds > 0 ? checkIntervalSeconds * 1000L : 0;
+		this.templates = new LinkedHashMap<String, CachedTemplate>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedTemplate> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Gets template from cache, parsing it if not cached yet (or modified).
+	 * @param name
+	 * @return the template
+	 * @throws Exception if the template cannot be found or parsed
+	 */
+	public Template getTemplate(String name) throws Exception {
+		CachedTemplate entry;
+		synchronized (templates) {
+			entry = templates.get(name);
+		}
+		if (entry != null) {
+			if (checkIntervalMillis > 0) {
+				long now = System.currentTimeMillis();
+				if (now - entry.checkedAt > checkIntervalMillis) {
+					entry.checkedAt = now;
+					if (entry.isModified()) {
+						log.info("Template "+name+" modified, parsing it again.");
+						return parse(name);
+					}
+				}
+			}
+			hits.incrementAndGet();
+			return entry.template;
+		}
+		misses.incrementAndGet();
+		return parse(name);
+	}
+
+	/**
+	 * Parses all specified templates and puts them into the cache.
+	 * Templates that cannot be parsed are logged and skipped.
+	 * @param names
+	 * @return number of templates parsed
+	 */
+	public int precompile(Collection<String> names) {
+		int count = 0;
+		for (String name : names) {
+			try {
+				parse(name);
+				count++;
+			} catch (Exception e) {
+				log.warn("Could not precompile template "+name+": "+e.getMessage());
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Removes all templates from the cache.
+	 */
+	public void clear() {
+		synchronized (templates) {
+			templates.clear();
+		}
+	}
+
+	private Template parse(String name) throws Exception {
+		File file = checkIntervalMillis > 0 ? findFile(name) : null;
+		long lastModified = file != null ? file.lastModified() : 0;	// before parsing, so changes while parsing are not missed
+		long start = System.nanoTime();
+		Template template = engine.getTemplate(name, ENCODING);
+		parseTimeNanos.addAndGet(System.nanoTime() - start);
+		parsed.incrementAndGet();
+		synchronized (templates) {
+			templates.put(name, new CachedTemplate(template, file, lastModified, System.currentTimeMillis()));
+		}
+		return template;
+	}
+
+	/**
+	 * Finds template file on the class path, the same way the ClasspathResourceLoader looks for templates.
+	 * @param name
+	 * @return the file or null if the template is not a file on the class path (e.g. in a jar)
+	 */
+	private File findFile(String name) {
+		String path = name;
+		while (path.startsWith("/")) {
+			path = path.substring(1);
+		}
+		URL url = null;
+		ClassLoader cl = Thread.currentThread().getContextClassLoader();
+		if (cl != null) {
+			url = cl.getResource(path);
+		}
+		if (url == null) {
+			url = TemplateCache.class.getClassLoader().getResource(path);
+		}
+		if (url == null || !"file".equals(url.getProtocol())) {
+			return null;
+		}
+		try {
+			return new File(url.toURI());
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/** @return number of templates currently cached */
+	public int getSize() {
+		synchronized (templates) {
+			return templates.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/** @return hits / (hits + misses) or 0 if there was no request yet */
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double)h / total;
+	}
+
+	/** @return number of times a template was parsed (including precompilation and reparsing of modified templates) */
+	public long getParsedCount() {
+		return parsed.get();
+	}
+
+	/** @return total time spent parsing templates */
+	public long getParseTimeNanos() {
+		return parseTimeNanos.get();
+	}
+}
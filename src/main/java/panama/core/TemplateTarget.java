@@ -15,14 +15,13 @@
  */
 package panama.core;
 
-import java.util.Enumeration;
-
 import org.apache.velocity.Template;
-import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.tools.view.ViewToolContext;
 
 /**
  * Use this to render a Velocity template.
+ * If {@link Dispatcher#PARAM_OUTPUTBUFFER_SIZE} or {@link Dispatcher#PARAM_COMPRESSION} is set, the output is rendered into a
+ * {@link BufferedResponseWriter} and sent with Content-Length (compressed if negotiated).
  * To render JSP or other, @see {@link ExternalTemplateTarget}
  * @author Robert
  */
@@ -47,23 +46,41 @@ public class TemplateTarget extends Target {
 		this.template = template;
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void go() throws Exception {
 		applyStatusCode();
+		if (isNotModified()) {
+			return;
+		}
 		Context ctx = Context.getInstance();
-		VelocityEngine engine = ctx.getCore().getVelocityEngine();
 		ViewToolContext velocityContext = ctx.getCore().getVelocityToolManager().createContext(ctx.getRequest(), ctx.getResponse());
 		ctx.getResponse().setContentType("text/html;charset=UTF-8");
 
-		// put all from request scope into context (this also contains the reference to the context itself by Dispatcher.CONTEXT_KEY)
-		String key = null;
-		for (Enumeration<String> e = ctx.getRequest().getAttributeNames(); e.hasMoreElements();) {
-			key = e.nextElement();
-			velocityContext.put(key, ctx.getRequest().getAttribute(key));
+		// no need to copy the request scope into the context: ViewToolContext looks up request attributes (then session and application attributes)
+		// itself when a template references them (this also covers the reference to the context itself by Dispatcher.CONTEXT_KEY)
+		Template template = ctx.getCore().getTemplate(this.template);
+		BufferedResponseWriter active = BufferedResponseWriter.getActive();
+		int bufferSize = getBufferSize();
+		long start = System.nanoTime();
+		Tracer.Span span = Tracer.span("template", this.template);
+		try {
+			if (active != null) {
+				// nested rendering (e.g. tiles) must go into the buffer of the enclosing template
+				template.merge(velocityContext, active);
+			} else if (bufferSize > 0) {
+				BufferedResponseWriter writer = openWriter(bufferSize);
+				try {
+					template.merge(velocityContext, writer);
+					finish(writer);
+				} finally {
+					writer.close();
+				}
+			} else {
+				template.merge(velocityContext, ctx.getResponse().getWriter());
+			}
+		} finally {
+			span.close();
 		}
-		Template template = null;
-		template = engine.getTemplate(this.template, "UTF-8");
-		template.merge(velocityContext, ctx.getResponse().getWriter());
+		ctx.getCore().getMetrics().getTemplates().record(System.nanoTime() - start);
 	}
 }
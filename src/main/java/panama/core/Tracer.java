@@ -0,0 +1,295 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import panama.json.JSONArray;
+import panama.json.JSONObject;
+
+/**
+ * Traces a sample of the requests as trees of timed spans (request, action, render, tile, template, query ...).
+ * Sampled requests taking longer than a threshold are kept in a ring buffer, viewable via {@link SystemController}.
+ *
+ * Spans are started with {@link #span(String, String)} and closed in a finally block:
+ * <pre>
+ * Tracer.Span span = Tracer.span("query", sql);
+ * try {
+ *     ...
+ * } finally {
+ *     span.close();
+ * }
+ * </pre>
+ * (try-with-resources works as well, but causes a lint warning when the span is not referenced in the block)
+ * If the current request is not sampled (or tracing is disabled, which is the default), a shared no-op span is returned,
+ * so spans cost nothing but a volatile read in that case.
+ *
+ * @author ridcully
+ */
+public class Tracer {
+
+	/** current span of each thread */
+	private final static ThreadLocal<Span> CURRENT = new ThreadLocal<Span>();
+	/** number of sampled requests currently being handled, spans are only created if &gt; 0 */
+	private final static AtomicInteger ACTIVE = new AtomicInteger();
+
+	private final AtomicReferenceArray<Span> slow;
+	private final AtomicLong slowCount = new AtomicLong();
+
+	/**
+	 * @param bufferSize number of slow traces to keep
+	 */
+	public Tracer(int bufferSize) {
+		slow = new AtomicReferenceArray<Span>(Math.max(1, bufferSize));
+	}
+
+	/**
+	 * Starts tracing a request, if it is sampled.
+	 * @param name
+	 * @param detail e.g. the path
+	 * @param sampleRate fraction of requests to trace, from 0 (none) to 1 (all)
+	 * @param slowMillis min. duration of traces to keep
+	 * @return root span of the trace or the no-op span if the request is not sampled
+	 */
+	public Span startTrace(String name, String detail, double sampleRate, long slowMillis) {
+		if (sampleRate <= 0 || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+			return Span.NOOP;
+		}
+		ACTIVE.incrementAndGet();
+		Span root = new Span(name, detail, null, CURRENT.get());
+		root.tracer = this;
+		root.slowNanos = slowMillis * 1000000L;
+		root.startedAt = System.currentTimeMillis();
+		CURRENT.set(root);
+		return root;
+	}
+
+	/**
+	 * Starts a span as child of the current span of this thread.
+	 * @param name kind of work, e.g. "template"
+	 * @param detail e.g. the template name, may be null
+	 * @return the span, or the no-op span if the current request is not traced
+	 */
+	public static Span span(String name, String detail) {
+		if (ACTIVE.get() == 0) {
+			return Span.NOOP;
+		}
+		return span(CURRENT.get(), name, detail);
+	}
+
+	/**
+	 * Starts a span as child of given span, e.g. for work done on behalf of a request by another thread.
+	 * The span becomes the current span of this thread until it is closed.
+	 * @param parent may be null or the no-op span
+	 * @param name
+	 * @param detail may be null
+	 * @return the span, or the no-op span if parent is not traced
+	 */
+	public static Span span(Span parent, String name, String detail) {
+		if (parent == null || parent == Span.NOOP) {
+			return Span.NOOP;
+		}
+		Span span = new Span(name, detail, parent, CURRENT.get());
+		parent.add(span);
+		CURRENT.set(span);
+		return span;
+	}
+
+	/**
+	 * @return current span of this thread, the no-op span if there is none
+	 */
+	public static Span current() {
+		if (ACTIVE.get() == 0) {
+			return Span.NOOP;
+		}
+		Span span = CURRENT.get();
+		return span != null ? span : Span.NOOP;
+	}
+
+	private void finish(Span root) {
+		ACTIVE.decrementAndGet();
+		if (root.getDurationNanos() >= root.slowNanos) {
+			slow.set((int)(slowCount.getAndIncrement() % slow.length()), root);
+		}
+	}
+
+	/**
+	 * @return slow traces kept, most recent first
+	 */
+	public List<Span> getSlowTraces() {
+		List<Span> list = new ArrayList<Span>();
+		for (int i = 0; i < slow.length(); i++) {
+			Span span = slow.get(i);
+			if (span != null) {
+				list.add(span);
+			}
+		}
+		list.sort((a, b) -> Long.compare(b.startedAt, a.startedAt));
+		return list;
+	}
+
+	/**
+	 * @return slow traces kept as JSON, durations in milliseconds
+	 */
+	public JSONArray toJSON() {
+		JSONArray json = new JSONArray();
+		for (Span span : getSlowTraces()) {
+			json.put(span.toJSON());
+		}
+		return json;
+	}
+
+	/**
+	 * A timed piece of work. Spans must be closed by the thread that started them, unless they were detached from it.
+	 */
+	public static class Span implements AutoCloseable {
+
+		final static Span NOOP = new Span(null, null, null, null);
+
+		private final String name;
+		private final String detail;
+		private final Span parent;
+		private final Span previous;	// current span of the thread when this one was started
+		private final long start;
+		private volatile long end;
+		private volatile boolean detached;
+		private List<Span> children;
+		private Tracer tracer;			// only set for root spans
+		private long slowNanos;
+		private long startedAt;
+
+		Span(String name, String detail, Span parent, Span previous) {
+			this.name = name;
+			this.detail = detail;
+			this.parent = parent;
+			this.previous = previous;
+			this.start = name != null ? System.nanoTime() : 0;
+		}
+
+		private synchronized void add(Span child) {
+			if (children == null) {
+				children = new ArrayList<Span>();
+			}
+			children.add(child);
+		}
+
+		/**
+		 * Ends the span, making the span that was current when it was started the current span again (unless it was detached).
+		 */
+		@Override
+		public void close() {
+			if (this == NOOP || end != 0) {
+				return;
+			}
+			end = System.nanoTime();
+			if (!detached) {
+				restorePrevious();
+			}
+			if (tracer != null) {
+				tracer.finish(this);
+			}
+		}
+
+		/**
+		 * Makes the span that was current when this one was started the current span of this thread again, without ending this span.
+		 * Used when the work is continued by another thread, e.g. for async requests; that thread starts its spans
+		 * with {@link Tracer#span(Span, String, String)} and closes this span when done.
+		 */
+		public void detach() {
+			if (this == NOOP || detached || end != 0) {
+				return;
+			}
+			detached = true;
+			restorePrevious();
+		}
+
+		private void restorePrevious() {
+			if (previous != null) {
+				CURRENT.set(previous);
+			} else {
+				CURRENT.remove();
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getDetail() {
+			return detail;
+		}
+
+		public Span getParent() {
+			return parent;
+		}
+
+		/** @return whether this span is actually recorded */
+		public boolean isRecording() {
+			return this != NOOP;
+		}
+
+		/** @return duration in ns, up to now if the span is not closed yet */
+		public long getDurationNanos() {
+			long e = end;
+			return (e != 0 ? e : System.nanoTime()) - start;
+		}
+
+		/** @return child spans in the order they were started */
+		public synchronized List<Span> getChildren() {
+			return children != null ? new ArrayList<Span>(children) : Collections.<Span>emptyList();
+		}
+
+		/** @return the span and its children as JSON, durations in milliseconds, offsets relative to the parent */
+		public JSONObject toJSON() {
+			JSONObject json = new JSONObject();
+			json.put("name", name);
+			if (detail != null) {
+				json.put("detail", detail);
+			}
+			if (startedAt != 0) {
+				json.put("startedAt", startedAt);
+			}
+			if (parent != null) {
+				json.put("offset", millis(start - parent.start));
+			}
+			json.put("duration", millis(getDurationNanos()));
+			List<Span> list = getChildren();
+			if (!list.isEmpty()) {
+				JSONArray array = new JSONArray();
+				for (Span child : list) {
+					array.put(child.toJSON());
+				}
+				json.put("children", array);
+			}
+			return json;
+		}
+
+		private static double millis(long nanos) {
+			return Math.round(nanos / 1000d) / 1000d;
+		}
+
+		@Override
+		public String toString() {
+			return name + (detail != null ? " " + detail : "") + " : " + millis(getDurationNanos()) + " ms";
+		}
+	}
+}
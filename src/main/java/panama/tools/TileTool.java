@@ -15,9 +15,33 @@
  */
 package panama.tools;
 
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
 import org.apache.velocity.tools.Scope;
 import org.apache.velocity.tools.config.DefaultKey;
@@ -25,20 +49,41 @@ import org.apache.velocity.tools.config.InvalidScope;
 
 import panama.core.Context;
 import panama.core.Dispatcher;
+import panama.core.ResponseCache;
 import panama.core.Target;
 import panama.core.TemplateTarget;
+import panama.core.Tracer;
+import panama.log.SimpleLogger;
 
 
 
 /**
  * Support for Tiles.
  * Must be placed in Request-Scope!
+ *
+ * Tiles can be rendered in the background while the template continues rendering, by declaring them at the top of the template
+ * and referencing them where their output should be placed:
+ * <pre>
+ * #set($cart = $tiles.async("cart", "view"))
+ * #set($news = $tiles.async("news", "latest", {}, 1000, "News are not available."))
+ * ...
+ * $cart
+ * ...
+ * $news
+ * </pre>
+ * Background tiles get a context of their own, with a copy of the parameters and their own request attributes.
+ * They must not depend on each other or on attributes set while rendering the template.
+ * They do not see the live request and response of the enclosing request, but a snapshot of the request (headers, cookies,
+ * attributes, session, locale) taken when the tile is started; the request body cannot be read and no session can be created.
+ * Tiles still running when the enclosing request ends are cancelled.
  * @author Ridcully
  */
 @DefaultKey(value="tiles")
 @InvalidScope({Scope.APPLICATION,Scope.SESSION})
 public class TileTool {
 
+	protected static SimpleLogger log = new SimpleLogger(TileTool.class);
+
 	/**
 	 * Executes specified action and renders the resulting template.
 	 * This method executes the given action. If the action returns a TemplateTarget, it's go() method is invoked.
@@ -73,6 +118,7 @@ public class TileTool {
 	 * @param actionName The name of the action to execute.
 	 * @param parameterMap A map of additional parameters; all keys an values should be strings or will converted using toString().
 	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public void embed(String controllerName, String actionName, Map parameterMap) throws Exception {
 		Context ctx = Context.getInstance();
 		Map backup = null;
@@ -91,4 +137,551 @@ public class TileTool {
 			}
 		}
 	} 	
+
+	/**
+	 * Starts executing specified action and rendering the resulting template in the background.
+	 * Waits for the tile at most {@link Dispatcher#PARAM_TILES_TIMEOUT} ms, renders nothing if it fails or takes longer.
+	 * @see #async(String, String, Map, long, String)
+	 * @param controllerName The name of the controller to use.
+	 * @param actionName The name of the action to execute.
+	 * @return the tile, rendering it's output when referenced in a template
+	 */
+	public Tile async(String controllerName, String actionName) {
+		return async(controllerName, actionName, null);
+	}
+
+	/**
+	 * Starts executing specified action with additional parameters and rendering the resulting template in the background.
+	 * @see #async(String, String, Map, long, String)
+	 * @param controllerName The name of the controller to use.
+	 * @param actionName The name of the action to execute.
+	 * @param parameterMap A map of additional parameters; all keys an values should be strings or will converted using toString().
+	 * @return the tile, rendering it's output when referenced in a template
+	 */
+	@SuppressWarnings("rawtypes")
+	public Tile async(String controllerName, String actionName, Map parameterMap) {
+		return async(controllerName, actionName, parameterMap, Context.getInstance().getCore().getTileTimeout(), "");
+	}
+
+	/**
+	 * Starts executing specified action with additional parameters and rendering the resulting template in the background.
+	 * If the max. number of tiles rendered in the background is reached, the tile is rendered like by {@link #embed(String, String, Map)}
+	 * when it is referenced.
+	 *
+	 * @param controllerName The name of the controller to use.
+	 * @param actionName The name of the action to execute.
+	 * @param parameterMap A map of additional parameters; all keys an values should be strings or will converted using toString().
+	 * @param timeoutMillis max. time to wait for the tile when it is referenced
+	 * @param fallback text to render instead of the tile if it fails or times out
+	 * @return the tile, rendering it's output when referenced in a template
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public Tile async(final String controllerName, final String actionName, Map parameterMap, long timeoutMillis, String fallback) {
+		final Context parent = Context.getInstance();
+		final Dispatcher core = parent.getCore();
+		final Map parameters = new HashMap(parent.getParameterMap());
+		if (parameterMap != null) {
+			for (Iterator<Map.Entry> it = parameterMap.entrySet().iterator(); it.hasNext(); ) {
+				Map.Entry e = it.next();
+				parameters.put(e.getKey().toString(), new String[] {e.getValue() != null ? e.getValue().toString() : null});
+			}
+		}
+		final Locale locale = parent.getLocale();
+		final boolean stateless = parent.isStateless();
+		final HttpSession session = parent.getExistingHttpSession();
+		final TileRequest request = new TileRequest(parent.getRequest(), session, parameters);
+		final TileResponse response = new TileResponse(parent.getResponse(), locale);
+		final CompletableFuture<String> output = new CompletableFuture<String>();
+		final Tracer.Span parentSpan = Tracer.current();
+		Future<?> task = core.submitTile(() -> {
+			Tracer.Span span = Tracer.span(parentSpan, "tile", controllerName+"/"+actionName);
+			try {
+				Context ctx = Context.createInstance(core, session, request, response, locale);
+				try {
+					ctx.setStateless(stateless);
+					ctx.setParameterMap(parameters);
+					ctx.put(Dispatcher.CONTEXT_KEY, ctx);
+					embed(controllerName, actionName);
+				} finally {
+					ctx.cancelBackgroundTasks();
+				}
+				ResponseCache.CachedResponse captured = response.getCaptured();
+				if (captured.isSent() || captured.getStatus() >= 400) {
+					throw new IllegalStateException("status "+captured.getStatus());
+				}
+				output.complete(new String(captured.getBody(), StandardCharsets.UTF_8));
+			} catch (Throwable e) {
+				output.completeExceptionally(e);
+			} finally {
+				span.close();
+				Context.destroyInstance();
+			}
+		});
+		return new Tile(controllerName, actionName, parameterMap, task, output, timeoutMillis, fallback);
+	}
+
+	/**
+	 * A tile rendered in the background, it's toString() waits for and returns the output.
+	 */
+	public class Tile {
+		private final String controllerName;
+		private final String actionName;
+		@SuppressWarnings("rawtypes")
+		private final Map parameterMap;
+		private final Future<?> task;
+		private final CompletableFuture<String> output;
+		private final long timeoutMillis;
+		private final String fallback;
+		private String result;
+
+		@SuppressWarnings("rawtypes")
+		Tile(String controllerName, String actionName, Map parameterMap, Future<?> task, CompletableFuture<String> output, long timeoutMillis, String fallback) {
+			this.controllerName = controllerName;
+			this.actionName = actionName;
+			this.parameterMap = parameterMap;
+			this.task = task;
+			this.output = output;
+			this.timeoutMillis = timeoutMillis;
+			this.fallback = fallback;
+		}
+
+		/**
+		 * Waits for the tile to be rendered, cancels it if it takes too long.
+		 * @return output of the tile, or the fallback if it failed or took too long
+		 */
+		@Override
+		public String toString() {
+			if (result != null) {
+				return result;
+			}
+			if (task == null) {
+				// not started in the background, render it here
+				try {
+					embed(controllerName, actionName, parameterMap);
+					result = "";
+				} catch (Exception e) {
+					log.error("Tile "+controllerName+"/"+actionName+" failed: "+e.getMessage());
+					result = fallback;
+				}
+				return result;
+			}
+			if (task.isCancelled()) {
+				return result = fallback;
+			}
+			try {
+				result = output.get(timeoutMillis, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				log.warn("Tile "+controllerName+"/"+actionName+" timed out after "+timeoutMillis+" ms.");
+				task.cancel(true);
+				result = fallback;
+			} catch (Exception e) {
+				log.error("Tile "+controllerName+"/"+actionName+" failed: "+e.getMessage());
+				result = fallback;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Creates object failing on every call, for the parts of request and response background tiles must not use.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T detached(final Class<T> type) {
+		return (T)Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "equals":		return proxy == args[0];
+				case "hashCode":	return System.identityHashCode(proxy);
+				case "toString":	return "detached "+type.getSimpleName();
+				default:			throw new IllegalStateException(type.getSimpleName()+"."+method.getName()+"() is not available in background tiles");
+			}
+		});
+	}
+
+	/**
+	 * Request of a background tile: a snapshot of the enclosing request, taken on the thread of the enclosing request.
+	 * The tile has attributes of it's own, initialized with a copy of the attributes of the enclosing request.
+	 * The headers for conditional requests and compression are left out, as they apply to the enclosing response only.
+	 */
+	private static class TileRequest extends HttpServletRequestWrapper {
+
+		private final static Set<String> HIDDEN_HEADERS = new HashSet<String>(Arrays.asList("accept-encoding", "if-none-match", "if-modified-since"));
+
+		private final Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+		private final Map<String, Object> attributes = Collections.synchronizedMap(new HashMap<String, Object>());
+		private final Map<String, String[]> parameters = new HashMap<String, String[]>();
+		private final List<Locale> locales = new ArrayList<Locale>();
+		private final HttpSession session;
+		private final Cookie[] cookies;
+		private final ServletContext servletContext;
+		private final String method;
+		private final String requestURI;
+		private final String requestURL;
+		private final String contextPath;
+		private final String servletPath;
+		private final String pathInfo;
+		private final String queryString;
+		private final String protocol;
+		private final String scheme;
+		private final String serverName;
+		private final int serverPort;
+		private final boolean secure;
+		private final String remoteAddr;
+		private final String remoteUser;
+		private final String requestedSessionId;
+
+		@SuppressWarnings("rawtypes")
+		TileRequest(HttpServletRequest request, HttpSession session, Map parameters) {
+			super(detached(HttpServletRequest.class));
+			for (Enumeration names = request.getHeaderNames(); names != null && names.hasMoreElements(); ) {
+				String name = (String)names.nextElement();
+				if (!HIDDEN_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+					List<String> values = new ArrayList<String>();
+					for (Enumeration e = request.getHeaders(name); e != null && e.hasMoreElements(); ) {
+						values.add((String)e.nextElement());
+					}
+					headers.put(name, values);
+				}
+			}
+			for (Enumeration names = request.getAttributeNames(); names != null && names.hasMoreElements(); ) {
+				String name = (String)names.nextElement();
+				attributes.put(name, request.getAttribute(name));
+			}
+			for (Object o : parameters.entrySet()) {
+				Map.Entry e = (Map.Entry)o;
+				if (e.getValue() instanceof String[]) {
+					this.parameters.put(e.getKey().toString(), (String[])e.getValue());
+				}
+			}
+			for (Enumeration e = request.getLocales(); e != null && e.hasMoreElements(); ) {
+				locales.add((Locale)e.nextElement());
+			}
+			this.session = session;
+			this.cookies = request.getCookies() != null ? request.getCookies().clone() : null;
+			this.servletContext = request.getServletContext();
+			this.method = request.getMethod();
+			this.requestURI = request.getRequestURI();
+			this.requestURL = request.getRequestURL() != null ? request.getRequestURL().toString() : null;
+			this.contextPath = request.getContextPath();
+			this.servletPath = request.getServletPath();
+			this.pathInfo = request.getPathInfo();
+			this.queryString = request.getQueryString();
+			this.protocol = request.getProtocol();
+			this.scheme = request.getScheme();
+			this.serverName = request.getServerName();
+			this.serverPort = request.getServerPort();
+			this.secure = request.isSecure();
+			this.remoteAddr = request.getRemoteAddr();
+			this.remoteUser = request.getRemoteUser();
+			this.requestedSessionId = request.getRequestedSessionId();
+		}
+
+		@Override
+		public Object getAttribute(String name) {
+			return attributes.get(name);
+		}
+
+		@Override
+		public void setAttribute(String name, Object value) {
+			attributes.put(name, value);
+		}
+
+		@Override
+		public void removeAttribute(String name) {
+			attributes.remove(name);
+		}
+
+		@Override
+		public Enumeration<String> getAttributeNames() {
+			synchronized (attributes) {
+				return Collections.enumeration(new ArrayList<String>(attributes.keySet()));
+			}
+		}
+
+		@Override
+		public String getHeader(String name) {
+			List<String> values = headers.get(name);
+			return values != null && !values.isEmpty() ? values.get(0) : null;
+		}
+
+		@Override
+		public Enumeration<String> getHeaders(String name) {
+			List<String> values = headers.get(name);
+			return Collections.enumeration(values != null ? values : Collections.<String>emptyList());
+		}
+
+		@Override
+		public Enumeration<String> getHeaderNames() {
+			return Collections.enumeration(headers.keySet());
+		}
+
+		@Override
+		public long getDateHeader(String name) {
+			String value = getHeader(name);
+			try {
+				return value != null ? ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() : -1;
+			} catch (Exception e) {
+				throw new IllegalArgumentException("Header "+name+" is no date: "+value);
+			}
+		}
+
+		@Override
+		public int getIntHeader(String name) {
+			String value = getHeader(name);
+			return value != null ? Integer.parseInt(value) : -1;
+		}
+
+		@Override
+		public String getParameter(String name) {
+			String[] values = parameters.get(name);
+			return values != null && values.length > 0 ? values[0] : null;
+		}
+
+		@Override
+		public String[] getParameterValues(String name) {
+			return parameters.get(name);
+		}
+
+		@Override
+		public Map<String, String[]> getParameterMap() {
+			return Collections.unmodifiableMap(parameters);
+		}
+
+		@Override
+		public Enumeration<String> getParameterNames() {
+			return Collections.enumeration(parameters.keySet());
+		}
+
+		@Override
+		public HttpSession getSession(boolean create) {
+			if (session == null && create) {
+				throw new IllegalStateException("Cannot create a session in a background tile");
+			}
+			return session;
+		}
+
+		@Override
+		public HttpSession getSession() {
+			return getSession(true);
+		}
+
+		@Override
+		public String getRequestedSessionId() {
+			return requestedSessionId;
+		}
+
+		@Override
+		public Locale getLocale() {
+			return locales.isEmpty() ? Locale.getDefault() : locales.get(0);
+		}
+
+		@Override
+		public Enumeration<Locale> getLocales() {
+			return Collections.enumeration(locales.isEmpty() ? Collections.singletonList(Locale.getDefault()) : locales);
+		}
+
+		@Override
+		public Cookie[] getCookies() {
+			return cookies != null ? cookies.clone() : null;
+		}
+
+		@Override
+		public ServletContext getServletContext() {
+			return servletContext;
+		}
+
+		@Override
+		public String getMethod() {
+			return method;
+		}
+
+		@Override
+		public String getRequestURI() {
+			return requestURI;
+		}
+
+		@Override
+		public StringBuffer getRequestURL() {
+			return requestURL != null ? new StringBuffer(requestURL) : null;
+		}
+
+		@Override
+		public String getContextPath() {
+			return contextPath;
+		}
+
+		@Override
+		public String getServletPath() {
+			return servletPath;
+		}
+
+		@Override
+		public String getPathInfo() {
+			return pathInfo;
+		}
+
+		@Override
+		public String getQueryString() {
+			return queryString;
+		}
+
+		@Override
+		public String getProtocol() {
+			return protocol;
+		}
+
+		@Override
+		public String getScheme() {
+			return scheme;
+		}
+
+		@Override
+		public String getServerName() {
+			return serverName;
+		}
+
+		@Override
+		public int getServerPort() {
+			return serverPort;
+		}
+
+		@Override
+		public boolean isSecure() {
+			return secure;
+		}
+
+		@Override
+		public String getRemoteAddr() {
+			return remoteAddr;
+		}
+
+		@Override
+		public String getRemoteUser() {
+			return remoteUser;
+		}
+
+		@Override
+		public String getCharacterEncoding() {
+			return "UTF-8";
+		}
+
+		@Override
+		public void setCharacterEncoding(String encoding) {
+		}
+
+		@Override
+		public String getContentType() {
+			return null;
+		}
+
+		@Override
+		public int getContentLength() {
+			return -1;
+		}
+
+		@Override
+		public long getContentLengthLong() {
+			return -1;
+		}
+
+		@Override
+		public boolean isAsyncSupported() {
+			return false;
+		}
+	}
+
+	/**
+	 * Response of a background tile, capturing the output without touching the response of the enclosing request.
+	 * URLs are encoded like by the enclosing response, as far as the session id is concerned.
+	 */
+	private static class TileResponse extends ResponseCache.CapturingResponse {
+
+		private final String sessionIdSuffix;	// appended to URLs by the enclosing response, if the session is tracked by URL rewriting
+		private Locale locale;
+		private String characterEncoding = "UTF-8";
+		private String contentType;
+
+		TileResponse(HttpServletResponse response, Locale locale) {
+			super(detached(HttpServletResponse.class), false);
+			String encoded = response.encodeURL("/");
+			this.sessionIdSuffix = encoded != null && encoded.startsWith("/") ? encoded.substring(1) : "";
+			this.locale = locale;
+		}
+
+		@Override
+		public String encodeURL(String url) {
+			if (url == null || sessionIdSuffix.isEmpty() || url.contains("://") || url.startsWith("//") || url.contains(sessionIdSuffix)) {
+				return url;
+			}
+			int end = url.length();
+			for (char c : new char[] {'?', '#'}) {
+				int i = url.indexOf(c);
+				if (i >= 0 && i < end) {
+					end = i;
+				}
+			}
+			return url.substring(0, end)+sessionIdSuffix+url.substring(end);
+		}
+
+		@Override
+		public String encodeRedirectURL(String url) {
+			return encodeURL(url);
+		}
+
+		@SuppressWarnings("deprecation")
+		@Override
+		public String encodeUrl(String url) {
+			return encodeURL(url);
+		}
+
+		@SuppressWarnings("deprecation")
+		@Override
+		public String encodeRedirectUrl(String url) {
+			return encodeURL(url);
+		}
+
+		@Override
+		public void setContentType(String type) {
+			contentType = type;
+			super.setContentType(type);
+		}
+
+		@Override
+		public String getContentType() {
+			return contentType;
+		}
+
+		@Override
+		public String getCharacterEncoding() {
+			return characterEncoding;
+		}
+
+		@Override
+		public void setCharacterEncoding(String characterEncoding) {
+			this.characterEncoding = characterEncoding;
+		}
+
+		@Override
+		public Locale getLocale() {
+			return locale;
+		}
+
+		@Override
+		public void setLocale(Locale locale) {
+			this.locale = locale;
+		}
+
+		@Override
+		public void setContentLengthLong(long len) {
+			// set when writing the captured response
+		}
+
+		@Override
+		public int getBufferSize() {
+			return 0;
+		}
+
+		@Override
+		public void setBufferSize(int size) {
+		}
+	}
 }
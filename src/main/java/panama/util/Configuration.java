@@ -15,7 +15,11 @@
  */
 package panama.util;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -33,6 +37,9 @@ import panama.log.SimpleLogger;
  * This class provides properties only after it's init() method has been invoked. This is done by Panama automatically during startup.
  * If you use this class in a different way (e.g. Unit Tests), make sure you invoke {@link #init(String)}, before trying to retrieve any configuration settings.
  *
+ * The properties are kept in an immutable snapshot, int and boolean values are parsed only once per key.
+ * {@link #reload()} replaces the snapshot at once, so readers see either the old or the new configuration.
+ *
  * @author robert.brandner
  */
 public class Configuration {
@@ -46,7 +53,27 @@ public class Configuration {
 	// prevent instantiation
 	private Configuration() {}
 
-	private static Properties panamaProperties = new Properties();
+	/** marks values that are missing or cannot be parsed in the caches of parsed values */
+	private final static Object NONE = new Object();
+
+	private static class Snapshot {
+		final Properties properties;
+		final Map<String, String> values;
+		final Map<String, Object> ints = new ConcurrentHashMap<String, Object>();
+		final Map<String, Object> booleans = new ConcurrentHashMap<String, Object>();
+
+		Snapshot(Properties properties) {
+			this.properties = properties;
+			Map<String, String> map = new HashMap<String, String>();
+			for (String key : properties.stringPropertyNames()) {
+				map.put(key, properties.getProperty(key));
+			}
+			this.values = Collections.unmodifiableMap(map);
+		}
+	}
+
+	private static volatile Snapshot snapshot = new Snapshot(new Properties());
+	private static String applicationName;
 
 	/**
 	 * This is invoked by the Dispatcher during initialization at start up.
@@ -55,11 +82,20 @@ public class Configuration {
 	 * @param appName
 	 */
 	public static synchronized void init(String appName) {
-		panamaProperties = Dispatcher.readProperties(
-				System.getProperty(appName + "." + Dispatcher.PREFIX + ".configuration"),
+		applicationName = appName;
+		reload();
+	}
+
+	/**
+	 * Reads the configuration file again and replaces the current configuration with its contents.
+	 * Note that framework settings only change when reloaded via {@link Dispatcher#reloadConfiguration()}.
+	 */
+	public static synchronized void reload() {
+		snapshot = new Snapshot(Dispatcher.readProperties(
+				System.getProperty(applicationName + "." + Dispatcher.PREFIX + ".configuration"),
 				System.getProperty(Dispatcher.PREFIX + ".configuration"),
 				"/panama.properties",
-				"/default-fallback-panama.properties");
+				"/default-fallback-panama.properties"));
 	}
 
 	/**
@@ -68,7 +104,7 @@ public class Configuration {
 	 * @return the value as string or null if key is null or no entry found
 	 */
 	public static String getString(String key) {
-		return panamaProperties.getProperty(key);
+		return key != null ? snapshot.values.get(key) : null;
 	}
 
 	/**
@@ -89,12 +125,22 @@ public class Configuration {
 	 * @return the value as int or defaultValue if property not found or value of property cannot be converted to an integer
 	 */
 	public static int getInt(String key, int defaultValue) {
-		String value = getString(key);
-		if (StringUtils.isEmpty(value)) return defaultValue;
+		if (key == null) return defaultValue;
+		Snapshot s = snapshot;
+		Object parsed = s.ints.get(key);
+		if (parsed == null) {
+			parsed = parseInt(s.values.get(key));
+			s.ints.put(key, parsed);
+		}
+		return parsed != NONE ? (Integer)parsed : defaultValue;
+	}
+
+	private static Object parseInt(String value) {
+		if (StringUtils.isEmpty(value)) return NONE;
 		try {
 			return Integer.parseInt(value);
 		} catch (Exception e) {
-			return defaultValue;
+			return NONE;
 		}
 	}
 
@@ -107,22 +153,32 @@ public class Configuration {
 	 * @return the value as boolean or defaultValue if property not found or value of property cannot be interpreted as boolean
 	 */
 	public static boolean getBoolean(String key, boolean defaultValue) {
-		String value = getString(key);
-		if (StringUtils.isEmpty(value)) return defaultValue;
+		if (key == null) return defaultValue;
+		Snapshot s = snapshot;
+		Object parsed = s.booleans.get(key);
+		if (parsed == null) {
+			parsed = parseBoolean(s.values.get(key));
+			s.booleans.put(key, parsed);
+		}
+		return parsed != NONE ? (Boolean)parsed : defaultValue;
+	}
+
+	private static Object parseBoolean(String value) {
+		if (StringUtils.isEmpty(value)) return NONE;
 		for (String s : BOOLEAN_TRUE) {
-			if (s.equalsIgnoreCase(value)) return true;
+			if (s.equalsIgnoreCase(value)) return Boolean.TRUE;
 		}
 		for (String s : BOOLEAN_FALSE) {
-			if (s.equalsIgnoreCase(value)) return false;
+			if (s.equalsIgnoreCase(value)) return Boolean.FALSE;
 		}
-		return defaultValue;
+		return NONE;
 	}
 
 	/**
 	 * Returns complete configuration
-	 * @return Properties object containing all configuration
+	 * @return Properties object containing all configuration, must not be modified
 	 */
 	public static Properties getAll() {
-		return panamaProperties;
+		return snapshot.properties;
 	}
 }
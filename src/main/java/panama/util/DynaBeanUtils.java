@@ -234,7 +234,7 @@ public class DynaBeanUtils {
 	 * @param propertyName
 	 * @return name of getter method.
 	 */
-	private static String getterName(String propertyName) {
+	static String getterName(String propertyName) {
 		String firstLetter = propertyName.substring(0, 1);
 		return "get" + firstLetter.toUpperCase() + propertyName.substring(1);
 	}
@@ -244,7 +244,7 @@ public class DynaBeanUtils {
 	 * @param propertyName
 	 * @return name of is method.
 	 */
-	private static String isName(String propertyName) {
+	static String isName(String propertyName) {
 		String firstLetter = propertyName.substring(0, 1);
 		return "is" + firstLetter.toUpperCase() + propertyName.substring(1);
 	}
@@ -0,0 +1,146 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reads a (possibly nested) property of beans of a specific class, like {@link DynaBeanUtils#getProperty(Object, String)},
+ * but with the getters resolved once and compiled to method handles.
+ *
+ * Accessors are cached per class and property, get them via {@link #forProperty(Class, String)}.
+ * If a getter of a nested property cannot be resolved from the declared return type of the previous getter,
+ * the accessor falls back to {@link DynaBeanUtils} for the rest of the path.
+ *
+ * @author ridcully
+ */
+public final class PropertyAccessor {
+
+	private final static MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private final static ClassValue<ConcurrentMap<String, PropertyAccessor>> ACCESSORS = new ClassValue<ConcurrentMap<String, PropertyAccessor>>() {
+		@Override
+		protected ConcurrentMap<String, PropertyAccessor> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<String, PropertyAccessor>();
+		}
+	};
+
+	private final MethodHandle[] getters;
+	private final String rest;		// path to read with DynaBeanUtils after the getters, null if none
+
+	private PropertyAccessor(MethodHandle[] getters, String rest) {
+		this.getters = getters;
+		this.rest = rest;
+	}
+
+	/**
+	 * Gets accessor for given property of given class.
+	 * @param type
+	 * @param propertyName simple or linked by dots (eg. user.name)
+	 * @return the accessor, never null
+	 */
+	public static PropertyAccessor forProperty(Class<?> type, String propertyName) {
+		ConcurrentMap<String, PropertyAccessor> accessors = ACCESSORS.get(type);
+		PropertyAccessor accessor = accessors.get(propertyName);
+		if (accessor == null) {
+			accessor = create(type, propertyName);
+			accessors.put(propertyName, accessor);
+		}
+		return accessor;
+	}
+
+	private static PropertyAccessor create(Class<?> type, String propertyName) {
+		String[] names = propertyName.split("\\.");
+		MethodHandle[] handles = new MethodHandle[names.length];
+		for (int i = 0; i < names.length; i++) {
+			Method getter = findGetter(type, names[i]);
+			MethodHandle handle = getter != null ? unreflect(getter) : null;
+			if (handle == null) {
+				MethodHandle[] resolved = new MethodHandle[i];
+				System.arraycopy(handles, 0, resolved, 0, i);
+				StringBuilder rest = new StringBuilder(names[i]);
+				for (int j = i + 1; j < names.length; j++) {
+					rest.append('.').append(names[j]);
+				}
+				return new PropertyAccessor(resolved, rest.toString());
+			}
+			handles[i] = handle;
+			type = getter.getReturnType();
+		}
+		return new PropertyAccessor(handles, null);
+	}
+
+	private static Method findGetter(Class<?> type, String name) {
+		if (name.length() == 0) {
+			return null;
+		}
+		try {
+			return type.getMethod(DynaBeanUtils.getterName(name));
+		} catch (NoSuchMethodException e) {
+			try {
+				Method is = type.getMethod(DynaBeanUtils.isName(name));
+				return is.getReturnType() == Boolean.TYPE ? is : null;
+			} catch (NoSuchMethodException e2) {
+				return null;
+			}
+		}
+	}
+
+	private static MethodHandle unreflect(Method method) {
+		try {
+			return MethodHandles.publicLookup().unreflect(method).asType(GETTER_TYPE);
+		} catch (IllegalAccessException e) {
+			// public method of a non-public class
+		}
+		try {
+			method.setAccessible(true);
+			return MethodHandles.lookup().unreflect(method).asType(GETTER_TYPE);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the property of given bean.
+	 * @param bean must be an instance of the class the accessor was created for
+	 * @return the value, null if the bean or any nested property on the path is null
+	 * @throws Exception if reading the property fails
+	 */
+	public Object get(Object bean) throws Exception {
+		Object value = bean;
+		for (MethodHandle getter : getters) {
+			if (value == null) {
+				return null;
+			}
+			try {
+				value = (Object)getter.invokeExact(value);
+			} catch (Exception | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new RuntimeException(t);
+			}
+		}
+		if (rest != null && value != null) {
+			value = DynaBeanUtils.getProperty(value, rest);
+		}
+		return value;
+	}
+}
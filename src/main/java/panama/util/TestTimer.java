@@ -35,7 +35,9 @@ import panama.log.SimpleLogger;
 
  * @author jfsmart
  * @author Ridcully
+ * @deprecated no longer used by the framework, use {@link panama.core.Tracer} spans or {@link panama.core.Metrics} instead
  */
+@Deprecated
 public class TestTimer {
 
 	private long startTime;
@@ -0,0 +1,132 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.lang.reflect.Method;
+
+import panama.core.ActionInvoker;
+import panama.core.BaseController;
+import panama.core.PlainTextTarget;
+import panama.core.Target;
+import panama.exceptions.HttpErrorException;
+
+/**
+ * Compares method handle based and reflective action invocation.
+ * @author ridcully
+ */
+public class ActionInvokerTest extends ContextTestCase {
+
+	public static class InvokerController extends BaseController {
+
+		/** what the last invoked action got */
+		String invoked;
+
+		public Target none() {
+			return result("none");
+		}
+
+		public Target one(String a) {
+			return result("one " + a);
+		}
+
+		public Target two(String a, int b) {
+			return result("two " + a + b);
+		}
+
+		public Target three(String a, int b, Long c) {
+			return result("three " + a + b + c);
+		}
+
+		public Target four(String a, int b, Long c, boolean d) {
+			return result("four " + a + b + c + d);
+		}
+
+		private Target result(String text) {
+			invoked = text;
+			return new PlainTextTarget(text);
+		}
+
+		public Target fail() {
+			throw new HttpErrorException(404);
+		}
+	}
+
+	public void testInvocation() throws Throwable {
+		InvokerController ctrl = new InvokerController();
+		for (ActionInvoker invoker : new ActionInvoker[] {
+				ActionInvoker.create(method("none")),
+				ActionInvoker.createReflective(method("none"))}) {
+			assertNotNull(invoker.invoke(ctrl));
+			assertNotNull(invoker.invoke(ctrl, new Object[0]));
+		}
+		assertNotNull(ActionInvoker.create(method("one")).invoke(ctrl, "a"));
+		assertNotNull(ActionInvoker.create(method("two")).invoke(ctrl, "a", 1));
+		assertNotNull(ActionInvoker.create(method("three")).invoke(ctrl, "a", 1, 2L));
+		assertNotNull(ActionInvoker.create(method("four")).invoke(ctrl, new Object[] {"a", 1, 2L, true}));
+		assertNotNull(ActionInvoker.createReflective(method("four")).invoke(ctrl, new Object[] {"a", 1, 2L, true}));
+	}
+
+	public void testExceptionsAreNotWrapped() throws Throwable {
+		InvokerController ctrl = new InvokerController();
+		for (ActionInvoker invoker : new ActionInvoker[] {
+				ActionInvoker.create(method("fail")),
+				ActionInvoker.createReflective(method("fail"))}) {
+			try {
+				invoker.invoke(ctrl);
+				fail("HttpErrorException expected");
+			} catch (HttpErrorException e) {
+				assertEquals(404, e.getStatusCode());
+			}
+		}
+	}
+
+	/**
+	 * The overloads for up to three arguments must pass the same arguments as the one taking an array.
+	 */
+	public void testArities() throws Throwable {
+		InvokerController ctrl = new InvokerController();
+		for (boolean reflective : new boolean[] {false, true}) {
+			String mode = reflective ? "reflective" : "method handle";
+			assertInvoked(mode, "none", ctrl, invoker("none", reflective).invoke(ctrl));
+			assertInvoked(mode, "one a", ctrl, invoker("one", reflective).invoke(ctrl, "a"));
+			assertInvoked(mode, "two a1", ctrl, invoker("two", reflective).invoke(ctrl, "a", 1));
+			assertInvoked(mode, "three a12", ctrl, invoker("three", reflective).invoke(ctrl, "a", 1, 2L));
+			assertInvoked(mode, "three null1null", ctrl, invoker("three", reflective).invoke(ctrl, null, 1, null));
+			assertInvoked(mode, "none", ctrl, invoker("none", reflective).invoke(ctrl, new Object[0]));
+			assertInvoked(mode, "one a", ctrl, invoker("one", reflective).invoke(ctrl, new Object[] {"a"}));
+			assertInvoked(mode, "two a1", ctrl, invoker("two", reflective).invoke(ctrl, new Object[] {"a", 1}));
+			assertInvoked(mode, "three a12", ctrl, invoker("three", reflective).invoke(ctrl, new Object[] {"a", 1, 2L}));
+			assertInvoked(mode, "four a12true", ctrl, invoker("four", reflective).invoke(ctrl, new Object[] {"a", 1, 2L, true}));
+		}
+	}
+
+	private void assertInvoked(String mode, String expected, InvokerController ctrl, Target target) {
+		assertTrue(mode, target instanceof PlainTextTarget);
+		assertEquals(mode, expected, ctrl.invoked);
+		ctrl.invoked = null;
+	}
+
+	private ActionInvoker invoker(String name, boolean reflective) {
+		return reflective ? ActionInvoker.createReflective(method(name)) : ActionInvoker.create(method(name));
+	}
+
+	private Method method(String name) {
+		for (Method m : InvokerController.class.getMethods()) {
+			if (m.getName().equals(name)) return m;
+		}
+		throw new IllegalArgumentException(name);
+	}
+}
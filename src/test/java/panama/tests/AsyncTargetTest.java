@@ -0,0 +1,56 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import panama.core.AsyncTarget;
+import panama.core.PlainTextTarget;
+import panama.core.Target;
+import panama.exceptions.HttpErrorException;
+
+/**
+ * @author ridcully
+ */
+public class AsyncTargetTest extends ContextTestCase {
+
+	public void testGoWaitsForTarget() throws Exception {
+		CompletableFuture<Target> future = CompletableFuture.supplyAsync(() -> new PlainTextTarget("later"));
+		new AsyncTarget(future).go();
+		assertEquals("later", ((MockResponse)context.getResponse()).getContent());
+	}
+
+	public void testFailure() throws Exception {
+		CompletableFuture<Target> future = new CompletableFuture<Target>();
+		future.completeExceptionally(new HttpErrorException(404));
+		try {
+			new AsyncTarget(future).go();
+			fail("HttpErrorException expected");
+		} catch (HttpErrorException e) {
+			assertEquals(404, e.getStatusCode());
+		}
+	}
+
+	public void testTimeout() throws Exception {
+		try {
+			new AsyncTarget(new CompletableFuture<Target>(), 10).go();
+			fail("TimeoutException expected");
+		} catch (TimeoutException e) {
+			// expected
+		}
+	}
+}
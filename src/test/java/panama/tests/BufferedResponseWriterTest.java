@@ -0,0 +1,159 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import junit.framework.TestCase;
+import panama.core.BufferedResponseWriter;
+
+/**
+ * @author ridcully
+ */
+public class BufferedResponseWriterTest extends TestCase {
+
+	private final static String TEXT = "Grüße, € 100 😀 <b>bold</b>";
+
+	public void testBuffered() throws Exception {
+		MockResponse res = new MockResponse();
+		BufferedResponseWriter w = BufferedResponseWriter.open(res, 1024);
+		try {
+			assertSame(w, BufferedResponseWriter.getActive());
+			w.write(TEXT);
+			w.write('!');
+			w.flush();
+			assertEquals(0, res.getBytes().length);	// nothing written before finish
+			w.finish();
+		} finally {
+			w.close();
+		}
+		assertNull(BufferedResponseWriter.getActive());
+		byte[] expected = (TEXT + "!").getBytes(StandardCharsets.UTF_8);
+		assertTrue(Arrays.equals(expected, res.getBytes()));
+		assertEquals(expected.length, res.getContentLength());
+	}
+
+	public void testUnpairedSurrogates() throws Exception {
+		MockResponse res = new MockResponse();
+		BufferedResponseWriter w = BufferedResponseWriter.open(res, 1024);
+		try {
+			w.write("a\ud83db\ude00c\ud83d");
+			w.finish();
+		} finally {
+			w.close();
+		}
+		assertEquals("a?b?c?", res.getContent());
+	}
+
+	public void testOverflowStreams() throws Exception {
+		MockResponse res = new MockResponse();
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 100000) {
+			sb.append(TEXT);
+		}
+		String text = sb.toString();
+		BufferedResponseWriter w = BufferedResponseWriter.open(res, 16 * 1024);
+		try {
+			w.write(text.toCharArray());
+			assertTrue(w.isStreaming());
+			w.finish();
+		} finally {
+			w.close();
+		}
+		assertEquals(-1, res.getContentLength());
+		assertEquals(text, res.getContent());
+	}
+
+	public void testCompressed() throws Exception {
+		String text = repeat(TEXT, 100);
+		for (String encoding : new String[] {BufferedResponseWriter.GZIP, BufferedResponseWriter.DEFLATE}) {
+			MockResponse res = write(text, encoding, 1024, 1024 * 1024);
+			assertEquals(encoding, res.getHeader("Content-Encoding"));
+			assertEquals(res.getBytes().length, res.getContentLength());
+			assertTrue(res.getContentLength() < text.length() / 4);
+			assertEquals(text, inflate(res.getBytes(), encoding));
+		}
+	}
+
+	public void testCompressedStreaming() throws Exception {
+		String text = repeat(TEXT, 10000);
+		for (String encoding : new String[] {BufferedResponseWriter.GZIP, BufferedResponseWriter.DEFLATE}) {
+			MockResponse res = write(text, encoding, 1024, 16 * 1024);
+			assertEquals(encoding, res.getHeader("Content-Encoding"));
+			assertEquals(-1, res.getContentLength());
+			assertEquals(text, inflate(res.getBytes(), encoding));
+		}
+	}
+
+	public void testBelowMinSizeNotCompressed() throws Exception {
+		MockResponse res = write(TEXT, BufferedResponseWriter.GZIP, 1024, 1024 * 1024);
+		assertNull(res.getHeader("Content-Encoding"));
+		assertEquals(TEXT, res.getContent());
+	}
+
+	private MockResponse write(String text, String encoding, int minSize, int limit) throws Exception {
+		MockResponse res = new MockResponse();
+		BufferedResponseWriter w = BufferedResponseWriter.open(res, limit);
+		try {
+			w.setCompression(encoding, minSize, 6);
+			w.write(text);
+			w.finish();
+		} finally {
+			w.close();
+		}
+		return res;
+	}
+
+	private String repeat(String s, int times) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < times; i++) {
+			sb.append(s).append(i);
+		}
+		return sb.toString();
+	}
+
+	private String inflate(byte[] bytes, String encoding) throws Exception {
+		InputStream in = new ByteArrayInputStream(bytes);
+		in = BufferedResponseWriter.GZIP.equals(encoding) ? new GZIPInputStream(in) : new InflaterInputStream(in);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[4096];
+		int n;
+		while ((n = in.read(b)) > 0) {
+			out.write(b, 0, n);
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	public void testReuse() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			MockResponse res = new MockResponse();
+			BufferedResponseWriter w = BufferedResponseWriter.open(res, 1024);
+			try {
+				w.write("run " + i);
+				w.finish();
+			} finally {
+				w.close();
+			}
+			assertEquals("run " + i, res.getContent());
+		}
+	}
+}
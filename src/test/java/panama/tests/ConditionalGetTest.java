@@ -0,0 +1,137 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.util.Date;
+import java.util.Locale;
+
+import javax.servlet.http.HttpServletResponse;
+
+import panama.core.Context;
+import panama.core.Dispatcher;
+import panama.core.JsonTarget;
+import panama.core.PlainTextTarget;
+import panama.core.Target;
+import panama.json.JSONObject;
+
+/**
+ * @author ridcully
+ */
+public class ConditionalGetTest extends ContextTestCase {
+
+	private MockRequest req;
+	private MockResponse res;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		newRequest();
+	}
+
+	private void newRequest() throws Exception {
+		Context.destroyInstance();
+		req = new MockRequest();
+		res = new MockResponse();
+		context = Context.createInstance(new Dispatcher(), new MockHttpSession(), req, res, Locale.ENGLISH);
+	}
+
+	public void testSuppliedETag() throws Exception {
+		Target t = new PlainTextTarget("hello");
+		t.setETag("v1");
+		t.go();
+		assertEquals("\"v1\"", res.getHeader("ETag"));
+		assertEquals("hello", res.getContent());
+
+		newRequest();
+		req.setHeader("If-None-Match", "\"v0\", \"v1\"");
+		t.go();
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, res.getStatus());
+		assertEquals("", res.getContent());
+
+		newRequest();
+		req.setHeader("If-None-Match", "\"v0\"");
+		t.go();
+		assertEquals(HttpServletResponse.SC_OK, res.getStatus());
+		assertEquals("hello", res.getContent());
+	}
+
+	public void testWeakETag() throws Exception {
+		Target t = new PlainTextTarget("hello");
+		t.setWeakETag("42");
+		req.setHeader("If-None-Match", "\"42\"");
+		t.go();
+		assertEquals("W/\"42\"", res.getHeader("ETag"));
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, res.getStatus());
+	}
+
+	public void testLastModified() throws Exception {
+		Target t = new PlainTextTarget("hello");
+		t.setLastModified(new Date(1000000999L));
+		t.go();
+		String lastModified = res.getHeader("Last-Modified");
+		assertNotNull(lastModified);
+
+		newRequest();
+		req.setHeader("If-Modified-Since", lastModified);
+		t.go();
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, res.getStatus());
+
+		newRequest();
+		t.setLastModified(new Date(1000002000L));
+		req.setHeader("If-Modified-Since", lastModified);
+		t.go();
+		assertEquals(HttpServletResponse.SC_OK, res.getStatus());
+		assertEquals("hello", res.getContent());
+	}
+
+	public void testLargeOutputStreamedWithoutETag() throws Exception {
+		StringBuilder text = new StringBuilder();
+		while (text.length() < 1024 * 1024) {
+			text.append("0123456789abcdef");
+		}
+		Target t = new PlainTextTarget(text.toString());
+		t.setComputeETag(true);
+		t.go();
+		assertNull(res.getHeader("ETag"));		// exceeds the buffer, so it is streamed
+		assertEquals(text.toString(), res.getContent());
+	}
+
+	public void testComputedETag() throws Exception {
+		Target t = new JsonTarget(new JSONObject().put("answer", 42));
+		t.setComputeETag(true);
+		t.go();
+		String etag = res.getHeader("ETag");
+		assertNotNull(etag);
+		assertEquals("{\"answer\":42}", res.getContent());
+		assertEquals(res.getBytes().length, res.getContentLength());
+
+		newRequest();
+		req.setHeader("If-None-Match", etag);
+		t.go();
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, res.getStatus());
+		assertEquals("", res.getContent());
+	}
+
+	public void testOnlyGetAndHead() throws Exception {
+		Target t = new PlainTextTarget("hello");
+		t.setETag("v1");
+		req.setMethod("POST");
+		req.setHeader("If-None-Match", "\"v1\"");
+		t.go();
+		assertEquals(HttpServletResponse.SC_OK, res.getStatus());
+		assertEquals("hello", res.getContent());
+	}
+}
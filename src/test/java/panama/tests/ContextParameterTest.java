@@ -15,7 +15,21 @@
  */
 package panama.tests;
 
+import java.util.Arrays;
+import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.beanutils.Converter;
+
+import panama.annotations.Action;
+import panama.annotations.Controller;
+import panama.annotations.ContextParam;
+import panama.core.BaseController;
+import panama.core.Dispatcher;
+import panama.core.NullTarget;
+import panama.core.ParamConvertUtil;
+import panama.core.Target;
 
 /**
  * @author ridcully
@@ -23,6 +37,25 @@ import java.util.GregorianCalendar;
  */
 public class ContextParameterTest extends ContextTestCase {
 
+    @Controller
+    public static class ParamController extends BaseController {
+
+        @Action
+        public Target number(@ContextParam("number") Integer number) {
+            context.put("number", number);
+            return new NullTarget();
+        }
+    }
+
+    @Override
+    protected Dispatcher createDispatcher() {
+        return new Dispatcher() {
+            {
+                addControllers(Arrays.asList(ParamController.class));
+            }
+        };
+    }
+
     public void testStringParams() {
         context.setParameter("null", (String)null);
         context.setParameter("hello", "hello");
@@ -57,10 +90,59 @@ public class ContextParameterTest extends ContextTestCase {
     	assertTrue(context.getParameter("unknown", boolean.class, true));
     }
 
+    public void testInvalidParams() {
+        context.setParameter("invalid", "x1");
+        assertNull(context.getIntParameter("invalid"));
+        assertTrue(0 == context.getParameter("invalid", int.class, 99));
+        assertNull(context.getBooleanParameter("invalid"));
+        assertNull(context.getDateParameter("invalid"));
+        context.setParameter("invalid", "2015-02-30");
+        assertNull(context.getDateParameter("invalid"));
+    }
+
+    public void testEnumParams() {
+        context.setParameter("enum", "SECONDS");
+        assertEquals(TimeUnit.SECONDS, context.getParameter("enum", TimeUnit.class, null));
+        context.setParameter("enum", "unknown");
+        assertNull(context.getParameter("enum", TimeUnit.class, null));
+    }
+
     public void testDateParams() {
     	context.setParameter("date", "2015-08-01");
     	assertEquals(new GregorianCalendar(2015, 7, 1).getTime(), context.getDateParameter("date"));
     	context.setParameter("date", "2015-08-01 15:00:00");
     	assertEquals(new GregorianCalendar(2015, 7, 1, 15, 0, 0).getTime(), context.getDateParameter("date"));
+    	context.setParameter("date", "15:30");
+    	assertEquals(new GregorianCalendar(1970, 0, 1, 15, 30, 0).getTime(), context.getDateParameter("date"));
+    	context.setParameter("date", "2015-8-1");
+    	assertEquals(new GregorianCalendar(2015, 7, 1).getTime(), context.getDateParameter("date"));
+    	context.setParameter("date", "9:30");
+    	assertEquals(new GregorianCalendar(1970, 0, 1, 9, 30, 0).getTime(), context.getDateParameter("date"));
+    }
+
+    /**
+     * Values that are not in the exact format of the patterns must be converted like ParamConvertUtil does.
+     */
+    public void testDateParamsLikeParamConvertUtil() {
+    	for (String value : new String[] {"2015-08-01", "2015-8-1", "9:30", "2015-08-01T10:00:00.5+01:00", "2015-08-01T10:00:00.500Z", "2015-02-30"}) {
+    		context.setParameter("date", value);
+    		assertEquals(value, ParamConvertUtil.getSharedInstance().convert(value, Date.class), context.getDateParameter("date"));
+    	}
+    	context.setParameter("date", "2015-08-01T10:00:00.5+01:00");
+    	assertNotNull(context.getDateParameter("date"));
+    }
+
+    public void testActionArgumentsUseConvertersOfContext() throws Exception {
+    	context.setParameter("number", "1");
+    	context.getCore().executeAction(context, ParamController.class.getName(), "number");
+    	assertEquals(1, context.get("number"));
+    	context.getParamConvertUtil().register(new Converter() {
+    		@Override
+    		public <T> T convert(Class<T> type, Object value) {
+    			return type.cast(42);
+    		}
+    	}, Integer.class);
+    	context.getCore().executeAction(context, ParamController.class.getName(), "number");
+    	assertEquals(42, context.get("number"));
     }
 }
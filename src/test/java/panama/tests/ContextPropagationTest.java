@@ -0,0 +1,64 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import panama.core.Context;
+
+/**
+ * Tests propagation of the context to other threads.
+ * @author ridcully
+ */
+public class ContextPropagationTest extends ContextTestCase {
+
+	public void testRunWithRestoresPreviousContext() throws Exception {
+		Context ctx = Context.getInstance();
+		assertNotNull(ctx);
+		Context.runWith(null, () -> assertNull(Context.getInstance()));
+		assertSame(ctx, Context.getInstance());
+		assertEquals("x", Context.callWith(null, () -> "x"));
+		assertSame(ctx, Context.getInstance());
+	}
+
+	public void testRunWithRestoresOnException() {
+		Context ctx = Context.getInstance();
+		try {
+			Context.runWith(null, () -> { throw new IllegalStateException(); });
+			fail("IllegalStateException expected");
+		} catch (IllegalStateException e) {
+			assertSame(ctx, Context.getInstance());
+		}
+	}
+
+	public void testWrapPropagatesAndCleansUp() throws Exception {
+		Context ctx = Context.getInstance();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Context> f = executor.submit(Context.wrap(() -> Context.getInstance()));
+			assertSame(ctx, f.get());
+			assertNull(executor.submit(() -> Context.getInstance()).get());
+			CompletableFuture<Context> cf = CompletableFuture.supplyAsync(() -> Context.getInstance(), Context.propagating(executor));
+			assertSame(ctx, cf.get());
+			assertNull(executor.submit(() -> Context.getInstance()).get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
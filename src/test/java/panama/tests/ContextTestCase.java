@@ -38,10 +38,18 @@ public class ContextTestCase extends TestCase {
 	@Override
 	protected void setUp() throws Exception {
 		super.setUp();
-		Dispatcher dispatcher = new Dispatcher();
+		Dispatcher dispatcher = createDispatcher();
 		context = Context.createInstance(dispatcher, new MockHttpSession(), new MockRequest(), new MockResponse(), Locale.ENGLISH);
 	}
 
+	/**
+	 * Creates the dispatcher of the context, override it to register controllers.
+	 * @return a Dispatcher that was not initialized
+	 */
+	protected Dispatcher createDispatcher() {
+		return new Dispatcher();
+	}
+
 	@Override
 	protected void tearDown() throws Exception {
 		super.tearDown();
@@ -0,0 +1,161 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.util.Arrays;
+
+import panama.annotations.Action;
+import panama.annotations.Controller;
+import panama.core.BaseController;
+import panama.core.Context;
+import panama.core.Dispatcher;
+import panama.core.NullTarget;
+import panama.core.Target;
+
+/**
+ * Tests how instances of controllers with scopes SINGLETON and POOLED are created and reused.
+ * @author ridcully
+ */
+public class ControllerScopeTest extends ContextTestCase {
+
+	private static final String RESULT = "result";
+	private static final String DEPTH = "depth";
+
+	@Controller(scope=Controller.Scope.SINGLETON)
+	public static class SingletonController extends BaseController {
+		static int instances;
+
+		public SingletonController() {
+			instances++;
+		}
+
+		@Action
+		public Target check() {
+			return result(context == null && getContext() == Context.getInstance());
+		}
+	}
+
+	@Controller(scope=Controller.Scope.SINGLETON)
+	public static class FailingSingletonController extends BaseController {
+		static int instances;
+
+		public FailingSingletonController() {
+			if (instances++ == 0) {
+				throw new IllegalStateException("first instance fails");
+			}
+		}
+
+		@Action
+		public Target check() {
+			return result(context == Context.getInstance());
+		}
+	}
+
+	@Controller(scope=Controller.Scope.POOLED)
+	public static class PooledController extends BaseController {
+		static int instances;
+		static int resets;
+		private boolean used;
+
+		public PooledController() {
+			instances++;
+		}
+
+		@Override
+		protected void reset() {
+			resets++;
+			used = false;
+		}
+
+		@Action
+		public Target check() {
+			boolean fresh = !used;
+			used = true;
+			return result(fresh && context == Context.getInstance());
+		}
+
+		/** keeps this instance busy while the action is executed again, until DEPTH is 1 */
+		@Action
+		public Target nest() {
+			int depth = (Integer)context.get(DEPTH);
+			if (depth > 1) {
+				context.put(DEPTH, depth - 1);
+				executeAction("nest");
+			}
+			return new NullTarget();
+		}
+	}
+
+	private static Target result(boolean ok) {
+		Context.getInstance().put(RESULT, ok);
+		return new NullTarget();
+	}
+
+	@Override
+	protected Dispatcher createDispatcher() {
+		SingletonController.instances = 0;
+		FailingSingletonController.instances = 0;
+		PooledController.instances = 0;
+		PooledController.resets = 0;
+		return new Dispatcher() {
+			{
+				addControllers(Arrays.asList(SingletonController.class, FailingSingletonController.class, PooledController.class));
+			}
+		};
+	}
+
+	public void testSingleton() throws Exception {
+		assertEquals(1, SingletonController.instances);	// created at startup
+		check(SingletonController.class);
+		check(SingletonController.class);
+		assertEquals(1, SingletonController.instances);
+	}
+
+	public void testSingletonFallsBackToPerRequest() throws Exception {
+		assertEquals(1, FailingSingletonController.instances);
+		check(FailingSingletonController.class);
+		check(FailingSingletonController.class);
+		assertEquals(3, FailingSingletonController.instances);
+	}
+
+	public void testPooledIsResetBeforeReuse() throws Exception {
+		check(PooledController.class);
+		check(PooledController.class);
+		check(PooledController.class);
+		assertEquals(1, PooledController.instances);
+		assertEquals(3, PooledController.resets);
+	}
+
+	public void testPoolIsLimited() throws Exception {
+		nest(6);
+		assertEquals(6, PooledController.instances);
+		nest(6);
+		assertEquals(8, PooledController.instances);	// 4 instances were kept
+		nest(4);
+		assertEquals(8, PooledController.instances);
+	}
+
+	private void check(Class<? extends BaseController> controllerClass) throws Exception {
+		context.put(RESULT, null);
+		context.getCore().executeAction(context, controllerClass.getName(), "check");
+		assertEquals(Boolean.TRUE, context.get(RESULT));
+	}
+
+	private void nest(int depth) throws Exception {
+		context.put(DEPTH, depth);
+		context.getCore().executeAction(context, PooledController.class.getName(), "nest");
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import panama.core.JsonTarget;
+import panama.core.StreamingJsonTarget;
+import panama.json.JSONObject;
+import panama.json.JSONWriter;
+
+/**
+ * @author ridcully
+ */
+public class JsonTargetTest extends ContextTestCase {
+
+	public void testStreamingSameAsBuffered() throws Exception {
+		JSONObject json = new JSONObject().put("name", "Panama").put("numbers", new int[] {1, 2, 3});
+		new JsonTarget(json).go();
+		String buffered = output();
+		new StreamingJsonTarget(json).go();
+		assertEquals(buffered + buffered, output());
+	}
+
+	public void testSource() throws Exception {
+		new StreamingJsonTarget(new StreamingJsonTarget.Source() {
+			@Override
+			public void write(JSONWriter writer) throws Exception {
+				writer.array();
+				for (int i = 0; i < 3; i++) {
+					writer.object().key("id").value(i).endObject();
+				}
+				writer.endArray();
+			}
+		}).go();
+		assertEquals("[{\"id\":0},{\"id\":1},{\"id\":2}]", output());
+	}
+
+	private String output() throws Exception {
+		return new String(((MockResponse)context.getResponse()).getBytes(), "UTF-8");
+	}
+}
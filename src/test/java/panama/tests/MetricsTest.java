@@ -0,0 +1,108 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import panama.core.LatencyHistogram;
+import panama.core.Metrics;
+import panama.json.JSONObject;
+
+/**
+ * Tests the latency histogram and the export of metrics.
+ * @author ridcully
+ */
+public class MetricsTest extends TestCase {
+
+	public void testPercentiles() {
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.getPercentile(50));
+		for (long i = 1; i <= 1000; i++) {
+			h.record(i * 1000000L);	// 1 to 1000 ms
+		}
+		assertEquals(1000, h.getCount());
+		assertEquals(1000000000L, h.getMax());
+		assertEquals(500500000000L, h.getSum());
+		assertNear(500000000L, h.getPercentile(50));
+		assertNear(990000000L, h.getPercentile(99));
+		assertEquals(1000000000L, h.getPercentile(100));
+		assertNear(1000000L, h.getPercentile(0));
+	}
+
+	public void testSmallAndLargeValues() {
+		LatencyHistogram h = new LatencyHistogram();
+		h.record(-1);
+		h.record(3);
+		h.record(Long.MAX_VALUE);
+		assertEquals(0, h.getPercentile(1));
+		assertEquals(3, h.getPercentile(50));
+		assertEquals(Long.MAX_VALUE, h.getPercentile(100));
+	}
+
+	public void testConcurrentRecording() throws Exception {
+		final LatencyHistogram h = new LatencyHistogram();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 100000; i++) {
+					h.record(i);
+				}
+			}));
+		}
+		for (Thread t : threads) t.start();
+		for (Thread t : threads) t.join();
+		assertEquals(400000, h.getCount());
+		assertEquals(99999, h.getMax());
+	}
+
+	public void testExport() {
+		Metrics metrics = new Metrics();
+		Metrics.ActionMetrics m = metrics.forAction("my.Controller.list");
+		assertSame(m, metrics.forAction("my.Controller.list"));
+		metrics.forAction("my.Controller.never");
+		m.begin();
+		m.getExecute().record(2000000);
+		m.getRender().record(3000000);
+		m.recordError(404);
+		m.recordError(500);
+		m.recordError(302);
+		assertEquals(1, m.getInFlight());
+		m.end();
+		assertEquals(0, m.getInFlight());
+		assertEquals(1, m.getClientErrors());
+		assertEquals(1, m.getServerErrors());
+
+		JSONObject json = metrics.toJSON();
+		assertEquals(1, json.getJSONArray("actions").length());
+		JSONObject action = json.getJSONArray("actions").getJSONObject(0);
+		assertEquals("my.Controller.list", action.getString("action"));
+		assertEquals(1, action.getLong("requests"));
+		assertEquals(2.0, action.getJSONObject("execute").getDouble("max"), 0.001);
+
+		String text = metrics.toPrometheus();
+		assertTrue(text, text.contains("panama_requests_total{action=\"my.Controller.list\"} 1\n"));
+		assertTrue(text, text.contains("panama_errors_total{action=\"my.Controller.list\",status=\"5xx\"} 1\n"));
+		assertTrue(text, text.contains("panama_action_render_seconds_count{action=\"my.Controller.list\"} 1\n"));
+		assertFalse(text, text.contains("never"));
+	}
+
+	/** percentiles are accurate to 1/8 of the value */
+	private void assertNear(long expected, long actual) {
+		assertTrue(expected+" ~ "+actual, Math.abs(expected - actual) <= expected / 8);
+	}
+}
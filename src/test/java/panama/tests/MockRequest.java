@@ -16,19 +16,34 @@
 package panama.tests;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.Principal;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
 import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
 import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpUpgradeHandler;
+import javax.servlet.http.Part;
 
 /**
  * @author robert.brandner
@@ -38,6 +53,31 @@ public class MockRequest implements HttpServletRequest {
 
 	private Map<String, Object> attributes = new HashMap<String, Object>();
 	private Map<String, String[]> parameters = new HashMap<String, String[]>();
+	private HttpSession session;
+	private Map<String, String> headers = new HashMap<String, String>();
+	private String method = "GET";
+	private String contentType;
+	private byte[] content;
+	private int contentLength = -1;
+
+	public void setHeader(String name, String value) {
+		headers.put(name, value);
+	}
+
+	public void setMethod(String method) {
+		this.method = method;
+	}
+
+	public void setContent(String contentType, byte[] content) {
+		this.contentType = contentType;
+		this.content = content;
+		this.contentLength = content.length;
+	}
+
+	/** @param contentLength -1 for unknown length, like for chunked requests */
+	public void setContentLength(int contentLength) {
+		this.contentLength = contentLength;
+	}
 
 	/* (non-Javadoc)
 	 * @see javax.servlet.ServletRequest#getAttribute(java.lang.String)
@@ -52,8 +92,7 @@ public class MockRequest implements HttpServletRequest {
 	 */
 	@Override
 	public Enumeration getAttributeNames() {
-		// Auto-generated method stub
-		return null;
+		return Collections.enumeration(attributes.keySet());
 	}
 
 	/* (non-Javadoc)
@@ -70,8 +109,7 @@ public class MockRequest implements HttpServletRequest {
 	 */
 	@Override
 	public int getContentLength() {
-		// Auto-generated method stub
-		return 0;
+		return contentLength;
 	}
 
 	/* (non-Javadoc)
@@ -79,8 +117,7 @@ public class MockRequest implements HttpServletRequest {
 	 */
 	@Override
 	public String getContentType() {
-		// Auto-generated method stub
-		return null;
+		return contentType;
 	}
 
 	/* (non-Javadoc)
@@ -88,8 +125,31 @@ public class MockRequest implements HttpServletRequest {
 	 */
 	@Override
 	public ServletInputStream getInputStream() throws IOException {
-		// Auto-generated method stub
-		return null;
+		if (content == null) {
+			return null;
+		}
+		final ByteArrayInputStream in = new ByteArrayInputStream(content);
+		return new ServletInputStream() {
+			@Override
+			public int read() throws IOException {
+				return in.read();
+			}
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return in.read(b, off, len);
+			}
+			@Override
+			public boolean isFinished() {
+				return in.available() == 0;
+			}
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+			@Override
+			public void setReadListener(ReadListener readListener) {
+			}
+		};
 	}
 
 	/* (non-Javadoc)
@@ -332,8 +392,8 @@ public class MockRequest implements HttpServletRequest {
 	 */
 	@Override
 	public long getDateHeader(String arg0) {
-		// Auto-generated method stub
-		return 0;
+		String value = headers.get(arg0);
+		return value != null ? ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() : -1;
 	}
 
 	/* (non-Javadoc)
@@ -341,8 +401,7 @@ public class MockRequest implements HttpServletRequest {
 	 */
 	@Override
 	public String getHeader(String arg0) {
-		// Auto-generated method stub
-		return null;
+		return headers.get(arg0);
 	}
 
 	/* (non-Javadoc)
@@ -350,8 +409,7 @@ public class MockRequest implements HttpServletRequest {
 	 */
 	@Override
 	public Enumeration getHeaderNames() {
-		// Auto-generated method stub
-		return null;
+		return Collections.enumeration(headers.keySet());
 	}
 
 	/* (non-Javadoc)
@@ -359,8 +417,8 @@ public class MockRequest implements HttpServletRequest {
 	 */
 	@Override
 	public Enumeration getHeaders(String arg0) {
-		// Auto-generated method stub
-		return null;
+		String value = headers.get(arg0);
+		return Collections.enumeration(value != null ? Collections.singletonList(value) : Collections.emptyList());
 	}
 
 	/* (non-Javadoc)
@@ -377,8 +435,7 @@ public class MockRequest implements HttpServletRequest {
 	 */
 	@Override
 	public String getMethod() {
-		// Auto-generated method stub
-		return null;
+		return method;
 	}
 
 	/* (non-Javadoc)
@@ -458,17 +515,18 @@ public class MockRequest implements HttpServletRequest {
 	 */
 	@Override
 	public HttpSession getSession() {
-		// Auto-generated method stub
-		return null;
+		return getSession(true);
 	}
 
 	/* (non-Javadoc)
 	 * @see javax.servlet.http.HttpServletRequest#getSession(boolean)
 	 */
 	@Override
-	public HttpSession getSession(boolean arg0) {
-		// Auto-generated method stub
-		return null;
+	public HttpSession getSession(boolean create) {
+		if (session == null && create) {
+			session = new MockHttpSession();
+		}
+		return session;
 	}
 
 	/* (non-Javadoc)
@@ -525,4 +583,84 @@ public class MockRequest implements HttpServletRequest {
 		return false;
 	}
 
+	@Override
+	public long getContentLengthLong() {
+		return getContentLength();
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		// Auto-generated method stub
+		return null;
+	}
+
+	@Override
+	public AsyncContext startAsync() throws IllegalStateException {
+		throw new IllegalStateException("async not supported");
+	}
+
+	@Override
+	public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) throws IllegalStateException {
+		throw new IllegalStateException("async not supported");
+	}
+
+	@Override
+	public boolean isAsyncStarted() {
+		return false;
+	}
+
+	@Override
+	public boolean isAsyncSupported() {
+		return false;
+	}
+
+	@Override
+	public AsyncContext getAsyncContext() {
+		throw new IllegalStateException("async not started");
+	}
+
+	@Override
+	public DispatcherType getDispatcherType() {
+		return DispatcherType.REQUEST;
+	}
+
+	@Override
+	public String changeSessionId() {
+		// Auto-generated method stub
+		return null;
+	}
+
+	@Override
+	public boolean authenticate(HttpServletResponse response) throws IOException, ServletException {
+		// Auto-generated method stub
+		return false;
+	}
+
+	@Override
+	public void login(String username, String password) throws ServletException {
+		// Auto-generated method stub
+	}
+
+	@Override
+	public void logout() throws ServletException {
+		// Auto-generated method stub
+	}
+
+	@Override
+	public Collection<Part> getParts() throws IOException, ServletException {
+		// Auto-generated method stub
+		return null;
+	}
+
+	@Override
+	public Part getPart(String name) throws IOException, ServletException {
+		// Auto-generated method stub
+		return null;
+	}
+
+	@Override
+	public <T extends HttpUpgradeHandler> T upgrade(Class<T> handlerClass) throws IOException, ServletException {
+		// Auto-generated method stub
+		return null;
+	}
 }
@@ -17,7 +17,14 @@ package panama.tests;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.Cookie;
@@ -32,12 +39,40 @@ public class MockResponse implements HttpServletResponse {
 	private MyServletOutputStream os;
 	private PrintWriter writer;
 	private String encoding = "UTF-8";
+	private int contentLength = -1;
+	private int status = SC_OK;
+	private Map<String, String> headers = new HashMap<String, String>();
 
 	public MockResponse() {
 		os = new MyServletOutputStream();
 		writer = new PrintWriter(os, true);
 	}
 
+	/**
+	 * @return everything written to the response so far
+	 */
+	public byte[] getBytes() {
+		writer.flush();
+		return os.getBytes();
+	}
+
+	/**
+	 * @return the Content-Length set or -1 if none was set
+	 */
+	public int getContentLength() {
+		return contentLength;
+	}
+
+	@Override
+	public int getStatus() {
+		return status;
+	}
+
+	@Override
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+
 	public String getContent() {
 		try {
 			writer.flush();
@@ -156,8 +191,7 @@ public class MockResponse implements HttpServletResponse {
 	 */
 	@Override
 	public void setContentLength(int arg0) {
-		// Auto-generated method stub
-
+		contentLength = arg0;
 	}
 
 	/* (non-Javadoc)
@@ -201,8 +235,7 @@ public class MockResponse implements HttpServletResponse {
 	 */
 	@Override
 	public void addHeader(String arg0, String arg1) {
-		// Auto-generated method stub
-
+		headers.put(arg0, arg1);
 	}
 
 	/* (non-Javadoc)
@@ -219,8 +252,7 @@ public class MockResponse implements HttpServletResponse {
 	 */
 	@Override
 	public boolean containsHeader(String arg0) {
-		// Auto-generated method stub
-		return false;
+		return headers.containsKey(arg0);
 	}
 
 	/* (non-Javadoc)
@@ -291,8 +323,7 @@ public class MockResponse implements HttpServletResponse {
 	 */
 	@Override
 	public void setDateHeader(String arg0, long arg1) {
-		// Auto-generated method stub
-
+		headers.put(arg0, DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(arg1).atZone(ZoneOffset.UTC)));
 	}
 
 	/* (non-Javadoc)
@@ -300,8 +331,7 @@ public class MockResponse implements HttpServletResponse {
 	 */
 	@Override
 	public void setHeader(String arg0, String arg1) {
-		// Auto-generated method stub
-
+		headers.put(arg0, arg1);
 	}
 
 	/* (non-Javadoc)
@@ -318,8 +348,7 @@ public class MockResponse implements HttpServletResponse {
 	 */
 	@Override
 	public void setStatus(int arg0) {
-		// Auto-generated method stub
-
+		status = arg0;
 	}
 
 	/* (non-Javadoc)
@@ -330,4 +359,20 @@ public class MockResponse implements HttpServletResponse {
 		// Auto-generated method stub
 
 	}
+
+	@Override
+	public void setContentLengthLong(long len) {
+		contentLength = (int)len;
+	}
+
+	@Override
+	public Collection<String> getHeaders(String name) {
+		String value = headers.get(name);
+		return value != null ? Collections.singletonList(value) : Collections.<String>emptyList();
+	}
+
+	@Override
+	public Collection<String> getHeaderNames() {
+		return headers.keySet();
+	}
 }
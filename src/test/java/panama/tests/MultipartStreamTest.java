@@ -0,0 +1,127 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import panama.core.MultipartStream;
+
+/**
+ * Tests reading multipart requests part by part.
+ * @author ridcully
+ */
+public class MultipartStreamTest extends ContextTestCase {
+
+	private final static String BOUNDARY = "----panama";
+
+	private MockRequest newRequest(String body) {
+		MockRequest request = (MockRequest)context.getRequest();
+		request.setMethod("POST");
+		request.setContent("multipart/form-data; boundary="+BOUNDARY, body.replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8));
+		return request;
+	}
+
+	private String field(String name, String value) {
+		return "--"+BOUNDARY+"\nContent-Disposition: form-data; name=\""+name+"\"\n\n"+value+"\n";
+	}
+
+	private String file(String name, String fileName, String content) {
+		return "--"+BOUNDARY+"\nContent-Disposition: form-data; name=\""+name+"\"; filename=\""+fileName+"\"\nContent-Type: text/csv\n\n"+content+"\n";
+	}
+
+	public void testParts() throws Exception {
+		StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			csv.append(i).append(";äöü\n");
+		}
+		newRequest(field("name", "Grüße") + file("empty", "", "") + file("data", "data.csv", csv.toString()) + field("after", "x") + "--"+BOUNDARY+"--\n");
+		MultipartStream parts = context.getMultipartStream();
+		assertNotNull(parts);
+		assertSame(parts, context.getMultipartStream());
+
+		MultipartStream.Part part = parts.next();
+		assertTrue(part.isFormField());
+		assertEquals("name", part.getFieldName());
+		assertEquals("Grüße", part.getString());
+
+		part = parts.next();	// empty file input is skipped
+		assertFalse(part.isFormField());
+		assertEquals("data", part.getFieldName());
+		assertEquals("data.csv", part.getName());
+		Path path = Files.createTempFile("panama", ".csv");
+		try {
+			long n = part.transferTo(path);
+			String expected = csv.toString().replace("\n", "\r\n");
+			assertEquals(expected.getBytes(StandardCharsets.UTF_8).length, n);
+			assertEquals(expected, new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+		} finally {
+			Files.delete(path);
+		}
+
+		part = parts.next();
+		assertEquals("after", part.getFieldName());
+		assertEquals("x", part.getString());
+		assertNull(parts.next());
+	}
+
+	public void testSkipsUnreadParts() throws Exception {
+		newRequest(file("data", "data.csv", "1;2;3") + field("after", "x") + "--"+BOUNDARY+"--\n");
+		MultipartStream parts = context.getMultipartStream();
+		assertEquals("data", parts.next().getFieldName());
+		assertEquals("x", parts.next().getString());
+	}
+
+	public void testMaxSizeIsEnforcedInAdvance() throws Exception {
+		newRequest(file("data", "data.csv", largeContent()) + "--"+BOUNDARY+"--\n");
+		try {
+			context.getMultipartStream();
+			fail("IOException expected");
+		} catch (IOException e) {
+			// Content-Length exceeds default of 1 MB
+		}
+	}
+
+	public void testMaxSizeIsEnforcedWhileReading() throws Exception {
+		newRequest(file("data", "data.csv", largeContent()) + "--"+BOUNDARY+"--\n").setContentLength(-1);
+		MultipartStream parts = context.getMultipartStream();
+		try {
+			Path path = Files.createTempFile("panama", ".csv");
+			try {
+				parts.next().transferTo(path);
+			} finally {
+				Files.delete(path);
+			}
+			fail("IOException expected");
+		} catch (IOException e) {
+			// exceeds default of 1 MB
+		}
+	}
+
+	private String largeContent() {
+		StringBuilder content = new StringBuilder();
+		while (content.length() < 2 * 1024 * 1024) {
+			content.append("0123456789abcdef");
+		}
+		return content.toString();
+	}
+
+	public void testNoMultipartRequest() throws Exception {
+		assertNull(context.getMultipartStream());
+	}
+}
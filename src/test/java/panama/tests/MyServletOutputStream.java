@@ -19,6 +19,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 
 /**
  * @author robert.brandner
@@ -56,4 +57,14 @@ public class MyServletOutputStream extends ServletOutputStream {
 		return bos.toByteArray();
 	}
 
+	@Override
+	public boolean isReady() {
+		return true;
+	}
+
+	@Override
+	public void setWriteListener(WriteListener writeListener) {
+		// Auto-generated method stub
+	}
+
 }
@@ -0,0 +1,184 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+
+import junit.framework.TestCase;
+import panama.core.BaseController;
+import panama.core.ResponseCache;
+import panama.core.ResponseCache.CachedResponse;
+import panama.core.ResponseCache.CapturingResponse;
+import panama.core.ResponseCache.Key;
+
+/**
+ * @author ridcully
+ */
+public class ResponseCacheTest extends TestCase {
+
+	public static class CatalogController extends BaseController {
+	}
+
+	private final static String[] VARY_BY = {"page", "locale"};
+
+	public void testCaptureAndWrite() throws Exception {
+		CachedResponse response = render("Hello", false);
+		assertTrue(response.isCacheable());
+		MockResponse res = new MockResponse();
+		response.writeTo(new MockRequest(), res);
+		assertEquals("Hello", res.getContent());
+		assertEquals(5, res.getContentLength());
+		assertEquals("\"v1\"", res.getHeader("ETag"));
+
+		MockRequest req = new MockRequest();
+		req.setHeader("If-None-Match", "\"v1\"");
+		res = new MockResponse();
+		response.writeTo(req, res);
+		assertEquals(304, res.getStatus());
+		assertEquals("", res.getContent());
+	}
+
+	public void testCookiesAreNotCached() throws Exception {
+		assertFalse(render("Hello", true).isCacheable());
+	}
+
+	public void testHitsAndInvalidation() throws Exception {
+		ResponseCache cache = new ResponseCache(1024);
+		AtomicInteger renderings = new AtomicInteger();
+		for (int i = 0; i < 3; i++) {
+			cache.get(key("1"), 60, () -> { renderings.incrementAndGet(); return render("page 1", false); });
+			cache.get(key("2"), 60, () -> { renderings.incrementAndGet(); return render("page 2", false); });
+		}
+		assertEquals(2, renderings.get());
+		assertEquals(4, cache.getHitCount());
+		assertEquals(1, cache.invalidate(CatalogController.class, "list", "page", "1"));
+		assertEquals(1, cache.getSize());
+		assertEquals(1, cache.invalidate(CatalogController.class, "list"));
+		assertEquals(0, cache.getBytes());
+	}
+
+	public void testExpiry() throws Exception {
+		ResponseCache cache = new ResponseCache(1024);
+		AtomicInteger renderings = new AtomicInteger();
+		cache.get(key("1"), 0, () -> { renderings.incrementAndGet(); return render("page 1", false); });
+		Thread.sleep(5);
+		cache.get(key("1"), 0, () -> { renderings.incrementAndGet(); return render("page 1", false); });
+		assertEquals(2, renderings.get());
+	}
+
+	public void testBoundedBySize() throws Exception {
+		ResponseCache cache = new ResponseCache(10);
+		cache.get(key("1"), 60, () -> render("12345", false));
+		cache.get(key("2"), 60, () -> render("12345", false));
+		cache.get(key("3"), 60, () -> render("12345", false));
+		assertEquals(2, cache.getSize());
+		assertEquals(10, cache.getBytes());
+	}
+
+	public void testSingleFlight() throws Exception {
+		final ResponseCache cache = new ResponseCache(1024);
+		final AtomicInteger renderings = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				try {
+					start.await();
+					cache.get(key("1"), 60, () -> {
+						renderings.incrementAndGet();
+						Thread.sleep(100);
+						return render("slow", false);
+					});
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertEquals(1, renderings.get());
+		assertEquals(threads.length - 1, cache.getHitCount());
+	}
+
+	public void testWaitingIsLimited() throws Exception {
+		final ResponseCache cache = new ResponseCache(1024, 50);
+		final CountDownLatch rendering = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		Thread slow = new Thread(() -> {
+			try {
+				cache.get(key("1"), 60, () -> {
+					rendering.countDown();
+					release.await();
+					return render("slow", false);
+				});
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		slow.start();
+		try {
+			assertTrue(rendering.await(1, TimeUnit.SECONDS));
+			CachedResponse response = cache.get(key("1"), 60, () -> render("fast", false));
+			assertEquals("fast", new String(response.getBody(), "UTF-8"));
+			assertEquals(0, cache.getHitCount());
+		} finally {
+			release.countDown();
+			slow.join();
+		}
+		assertEquals(1, cache.getSize());
+	}
+
+	public void testWriteListener() throws Exception {
+		CapturingResponse capture = new CapturingResponse(new MockResponse());
+		final ServletOutputStream out = capture.getOutputStream();
+		out.setWriteListener(new WriteListener() {
+			@Override
+			public void onWritePossible() throws IOException {
+				out.print("ready");
+			}
+			@Override
+			public void onError(Throwable t) {
+				fail(t.getMessage());
+			}
+		});
+		assertEquals("ready", new String(capture.getCaptured().getBody(), "UTF-8"));
+	}
+
+	private Key key(String page) {
+		return new Key(CatalogController.class, "list", VARY_BY, new String[] {page, "en"}, null);
+	}
+
+	private CachedResponse render(String text, boolean cookie) throws Exception {
+		CapturingResponse capture = new CapturingResponse(new MockResponse());
+		capture.setContentType("text/plain; charset=UTF-8");
+		capture.setHeader("ETag", "\"v1\"");
+		if (cookie) {
+			capture.addCookie(new Cookie("user", "me"));
+		}
+		capture.getWriter().write(text);
+		return capture.getCaptured();
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+import panama.annotations.Action;
+import panama.annotations.Controller;
+import panama.core.BaseController;
+import panama.core.Context;
+import panama.core.Dispatcher;
+import panama.core.NullTarget;
+import panama.core.Target;
+import panama.exceptions.NoSuchActionException;
+
+/**
+ * Tests that paths are resolved to the same actions as they were by splitting the path into controller and action names.
+ * @author ridcully
+ */
+public class RouteResolutionTest extends TestCase {
+
+	private static final String EXECUTED = "executed";
+
+	@Controller(alias="shop", defaultAction="index")
+	public static class ShopController extends BaseController {
+
+		@Action
+		public Target index() {
+			return executed("shop.index");
+		}
+
+		@Action(alias="all")
+		public Target list() {
+			return executed("shop.list");
+		}
+	}
+
+	@Controller
+	public static class PlainController extends BaseController {
+
+		@Action
+		public Target show() {
+			return executed("plain.show");
+		}
+	}
+
+	private static Target executed(String action) {
+		Context.getInstance().put(EXECUTED, action);
+		return new NullTarget();
+	}
+
+	private static class TestDispatcher extends Dispatcher {
+		TestDispatcher() {
+			addControllers(Arrays.asList(ShopController.class, PlainController.class));
+		}
+	}
+
+	private Dispatcher dispatcher;
+	private Context context;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dispatcher = new TestDispatcher();
+		context = Context.createInstance(dispatcher, new MockHttpSession(), new MockRequest(), new MockResponse(), Locale.ENGLISH);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		Context.destroyInstance();
+	}
+
+	public void testAliasAndClassName() throws Exception {
+		assertResolved("shop.list", "/shop/list");
+		assertResolved("shop.list", "/shop/all");
+		assertResolved("shop.list", "/" + ShopController.class.getName() + "/all");
+		assertResolved("plain.show", "/" + PlainController.class.getName() + "/show");
+		assertResolved("shop.list", "shop/list");
+		assertResolved("shop.list", "//shop/list");
+	}
+
+	public void testDefaultAction() throws Exception {
+		assertResolved("shop.index", "/shop");
+		assertResolved("shop.index", "/shop/");
+		assertResolved("shop.index", "/" + ShopController.class.getName() + "/");
+		assertResolved(null, "/" + PlainController.class.getName());	// has no default action
+		assertResolved(null, "/" + PlainController.class.getName() + "/");
+	}
+
+	public void testPaddedSegments() throws Exception {
+		assertResolved("shop.list", "/ shop / list ");
+		assertResolved("shop.list", "/shop/\tall");
+		assertResolved("shop.index", "/ shop /  ");
+		assertResolved(null, " /shop/list");
+	}
+
+	public void testUnknown() throws Exception {
+		assertResolved(null, "/shop/missing");
+		assertResolved(null, "/shop/List");
+		assertResolved(null, "/unknown/list");
+		assertResolved(null, "/unknown");
+		assertResolved(null, "/plain/show");	// no alias
+		assertResolved(null, "/a/shop/list");
+		assertResolved(null, "/");
+		assertResolved(null, "");
+	}
+
+	/**
+	 * Asserts that path is resolved to expected action, both by dispatcher and by controller and action names.
+	 * @param expected the action executed or null if the path must not be resolved
+	 * @param path
+	 */
+	private void assertResolved(String expected, String path) throws Exception {
+		assertEquals("by names: "+path, expected, executeByNames(path));
+		context.put(EXECUTED, null);
+		dispatcher.handleAction(context, path);
+		assertEquals("by route: "+path, expected, context.get(EXECUTED));
+		context.put(EXECUTED, null);
+	}
+
+	/**
+	 * Extracts controller and action names the way the dispatcher did before routes were resolved by lookups in tries.
+	 */
+	private String executeByNames(String path) {
+		String ctrlName = null;
+		String actionName = null;
+		path = path.replaceFirst("^/+", "");
+		if (path.length() > 0) {
+			int divider = path.lastIndexOf("/");
+			if (divider == -1) {
+				ctrlName = path;
+			} else {
+				ctrlName = path.substring(0, divider).trim();
+				if (divider+1 < path.length()) {
+					actionName = path.substring(divider+1).trim();
+				}
+			}
+		}
+		try {
+			dispatcher.executeAction(context, ctrlName, actionName);
+			return (String)context.get(EXECUTED);
+		} catch (NoSuchActionException e) {
+			return null;
+		} finally {
+			context.put(EXECUTED, null);
+		}
+	}
+}
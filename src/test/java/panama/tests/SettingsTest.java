@@ -0,0 +1,66 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+import panama.core.Dispatcher;
+import panama.core.Settings;
+
+/**
+ * Tests parsing of the framework settings.
+ * @author ridcully
+ */
+public class SettingsTest extends TestCase {
+
+	public void testDefaults() {
+		Settings settings = Settings.DEFAULTS;
+		assertFalse(settings.isProduction());
+		assertEquals(0, settings.getOutputBufferSize());
+		assertFalse(settings.isCompression());
+		assertEquals(6, settings.getCompressionLevel());
+		assertEquals(1024L * 1024L, settings.getMaxFileUploadSize());
+		assertEquals(30000, settings.getAsyncTimeout());
+		assertEquals(10000, settings.getTableParallelThreshold());
+		assertFalse(settings.isSystemDiagnostics());
+		assertEquals(Arrays.asList("en"), settings.getLanguages());
+	}
+
+	public void testInitParamsOverrideProperties() {
+		Map<String, String> params = new HashMap<String, String>();
+		params.put(Dispatcher.PARAM_MAXFILEUPLOADSIZE, "100");
+		params.put(Dispatcher.PARAM_COMPRESSION, "yes");
+		params.put(Dispatcher.PARAM_COMPRESSION_LEVEL, "42");
+		params.put(Dispatcher.PARAM_LANGUAGES, "de, en");
+		params.put(Dispatcher.PARAM_SYSTEM_DIAGNOSTICS, "true");
+		Properties properties = new Properties();
+		properties.setProperty(Dispatcher.PARAM_MAXFILEUPLOADSIZE, "2");
+		properties.setProperty(Dispatcher.PARAM_OUTPUTBUFFER_SIZE, "64");
+		properties.setProperty(Dispatcher.PARAM_ASYNC_TIMEOUT, "soon");
+		Settings settings = new Settings(params, properties);
+		assertEquals(100L * 1024L * 1024L, settings.getMaxFileUploadSize());
+		assertTrue(settings.isCompression());
+		assertEquals(9, settings.getCompressionLevel());
+		assertEquals(Arrays.asList("de", "en"), settings.getLanguages());
+		assertTrue(settings.isSystemDiagnostics());
+		assertEquals(64 * 1024, settings.getOutputBufferSize());
+		assertEquals(30000, settings.getAsyncTimeout());
+	}
+}
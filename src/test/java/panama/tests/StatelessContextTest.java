@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.util.Locale;
+
+import junit.framework.TestCase;
+import panama.core.Context;
+import panama.core.Dispatcher;
+
+/**
+ * Tests lazy session creation of Context.
+ * @author ridcully
+ */
+public class StatelessContextTest extends TestCase {
+
+	private MockRequest request;
+	private Context context;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		request = new MockRequest();
+		context = Context.createInstance(new Dispatcher(), null, request, new MockResponse(), Locale.ENGLISH);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		Context.destroyInstance();
+	}
+
+	public void testSessionCreatedLazily() {
+		assertNull(context.session.get("key"));
+		assertNull(context.tokens.get("token"));
+		assertEquals(Locale.ENGLISH, context.getLocale());
+		assertNull(request.getSession(false));
+		context.session.put("key", "value");
+		assertNotNull(request.getSession(false));
+		assertEquals("value", context.session.get("key"));
+	}
+
+	public void testStatelessNeverCreatesSession() {
+		context.setStateless(true);
+		assertNull(context.session.get("key"));
+		try {
+			context.session.put("key", "value");
+			fail("IllegalStateException expected");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertNull(request.getSession(false));
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import panama.core.SystemController;
+import panama.exceptions.HttpErrorException;
+import panama.json.JSONObject;
+
+/**
+ * Tests the diagnostics of the system controller.
+ * @author ridcully
+ */
+public class SystemControllerTest extends ContextTestCase {
+
+	public void testDiagnostics() throws Exception {
+		context.getCore().getMetrics().forAction("my.Controller.list").getExecute().record(1000000);
+		context.getCore().getMetrics().forAction("my.Controller.list").begin();
+		new SystemController().diagnostics().go();
+		JSONObject json = new JSONObject(((MockResponse)context.getResponse()).getContent());
+		assertTrue(json.getJSONObject("jvm").getJSONObject("heap").getLong("used") > 0);
+		assertTrue(json.getJSONObject("jvm").getJSONObject("threads").getLong("live") > 0);
+		assertEquals(0, json.getJSONObject("routes").getInt("actions"));
+		assertTrue(json.isNull("templateCache"));
+		assertEquals("my.Controller.list", json.getJSONArray("slowestActions").getJSONObject(0).getString("action"));
+		assertEquals(0, json.getJSONArray("sessionTables").length());
+	}
+
+	public void testDiagnosticsDisabledByDefault() throws Exception {
+		SystemController ctrl = new SystemController();
+		ctrl.beforeAction("info");
+		for (String action : new String[] {"metrics", "prometheus", "traces", "diagnostics"}) {
+			try {
+				ctrl.beforeAction(action);
+				fail(action+" must not be available");
+			} catch (HttpErrorException e) {
+				assertEquals(404, e.getStatusCode());
+			}
+		}
+		new SystemController() {
+			@Override
+			protected boolean isDiagnosticsAllowed() {
+				return true;
+			}
+		}.beforeAction("diagnostics");
+	}
+}
@@ -21,7 +21,10 @@ import java.util.List;
 import junit.framework.TestCase;
 import panama.collections.DefaultTable;
 import panama.collections.ListModel;
+import panama.collections.SimpleListModel;
 import panama.collections.Table;
+import panama.collections.filters.Filter;
+import panama.collections.filters.PropertyComparator;
 import panama.core.Context;
 import panama.util.TestTimer;
 
@@ -127,6 +130,143 @@ public class TableTest extends TestCase {
 		}
 	}
 
+	public void testSortOrder() {
+		ArrayListModel model = new ArrayListModel(0);
+		model.l.add(new MockEntry("b", new Double(2)));
+		model.l.add(new MockEntry(null, null));
+		model.l.add(new MockEntry("C", new Double(-1)));
+		model.l.add(new MockEntry("a", new Double(10)));
+		model.l.add(new MockEntry("B", new Double(2)));
+		table.setModel(model);
+
+		table.setSortBy("s");
+		table.setSortDirection(Table.SORT_ASC);
+		startNewRequest();
+		assertEquals("[null, a, b, B, C]", names(table.getRows()));	// case insensitive and stable
+		table.setSortDirection(Table.SORT_DESC);
+		startNewRequest();
+		assertEquals("[C, b, B, a, null]", names(table.getRows()));
+
+		table.setSortBy("d");
+		table.setSortDirection(Table.SORT_ASC);
+		startNewRequest();
+		assertEquals("[null, C, b, B, a]", names(table.getRows()));
+		table.setSortDirection(Table.SORT_DESC);
+		startNewRequest();
+		assertEquals("[a, b, B, C, null]", names(table.getRows()));
+
+		table.setSortBy("d.class.name");	// nested, all equal except null
+		table.setSortDirection(Table.SORT_ASC);
+		startNewRequest();
+		assertEquals("[null, a, b, B, C]", names(table.getRows()));
+
+		table.setSortBy("unknown");	// keeps the current order
+		table.setSortDirection(Table.SORT_DESC);
+		startNewRequest();
+		assertEquals("[null, a, b, B, C]", names(table.getRows()));
+	}
+
+	public void testParallelFilterAndSort() {
+		ArrayListModel model = new ArrayListModel(0);
+		for (int i = 0; i < 20000; i++) {
+			model.l.add(new MockEntry("entry" + i, new Double(Math.floor(Math.random() * 100))));	// many equal values
+		}
+		table.setModel(model);
+		table.setFilter("even", new Filter() {
+			@Override
+			public boolean match(Object object) {
+				return ((MockEntry)object).getD().intValue() % 2 == 0;
+			}
+		});
+		table.setFilter("small", new Filter() {
+			@Override
+			public boolean match(Object object) {
+				return ((MockEntry)object).getD() < 80;
+			}
+		});
+		table.setSortBy("d", Table.SORT_DESC);
+
+		table.setParallelThreshold(0);
+		startNewRequest();
+		List sequential = new ArrayList(table.getRows());
+		table.setParallelThreshold(1);
+		startNewRequest();
+		List parallel = table.getRows();
+		assertEquals(sequential, parallel);	// same rows in the same order, ties included
+		for (Object row : parallel) {
+			double d = ((MockEntry)row).getD();
+			assertTrue(d < 80 && d % 2 == 0);
+		}
+	}
+
+	public void testViewCache() {
+		final int[] fetched = new int[1];
+		List<MockEntry> entries = new ArrayList<MockEntry>();
+		for (int i = 0; i < 100; i++) {
+			entries.add(new MockEntry("entry" + i, new Double(i % 10)));
+		}
+		SimpleListModel model = new SimpleListModel(entries) {
+			@Override
+			public List<? extends Object> getList() {
+				fetched[0]++;
+				return super.getList();
+			}
+		};
+		table.setModel(model);
+		table.setSortBy("d", Table.SORT_DESC);
+		table.setViewCacheEnabled(true);
+		assertEquals(9d, ((MockEntry)table.getPageRows().get(0)).getD());
+		for (int page = 1; page <= 10; page++) {	// turning pages in new requests does not fetch again
+			startNewRequest();
+			table.setCurrentPage(page);
+			assertEquals(10, table.getPageRows().size());
+		}
+		assertEquals(1, fetched[0]);
+
+		table.setSortDirection(Table.SORT_ASC);
+		assertEquals(0d, ((MockEntry)table.getRows().get(0)).getD());
+		assertEquals(2, fetched[0]);
+
+		entries.add(new MockEntry("new", new Double(-1)));
+		model.modified();
+		assertEquals(101, table.getRowCount());
+		assertEquals(3, fetched[0]);
+
+		table.setFilter("five", new Filter() {
+			@Override
+			public boolean match(Object object) {
+				return ((MockEntry)object).getD() == 5;
+			}
+		});
+		assertEquals(10, table.getRowCount());
+		startNewRequest();
+		assertEquals(10, table.getRowCount());
+		assertEquals(4, fetched[0]);
+
+		PropertyComparator name = (PropertyComparator)Filter.eq("s", "entry5");
+		table.setFilter("name", name);
+		assertEquals("[entry5]", names(table.getRows()));
+		name.setPattern("entry15");		// changed in place, detected by the state of the filter
+		startNewRequest();
+		assertEquals("[entry15]", names(table.getRows()));
+		assertEquals(6, fetched[0]);
+		table.removeFilter("name");
+
+		table.setViewCacheEnabled(false);	// once per request, also filtered
+		startNewRequest();
+		assertEquals(10, table.getRowCount());
+		assertEquals(10, table.getRowCount());
+		assertEquals(7, fetched[0]);
+	}
+
+	private String names(List rows) {
+		List<Object> values = new ArrayList<Object>();
+		for (Object row : rows) {
+			values.add(((MockEntry)row).getS());
+		}
+		return values.toString();
+	}
+
 	public void testCaching() {
 		startNewRequest();
 		table.setModel(new SlowListModel(10));
@@ -177,7 +317,7 @@ public class TableTest extends TestCase {
 		}
 	}
 
-	class MockEntry {
+	public class MockEntry {
 
 		private String s;
 		private Double d;
@@ -0,0 +1,103 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+
+import panama.core.TemplateCache;
+
+/**
+ * @author ridcully
+ */
+public class TemplateCacheTest extends TestCase {
+
+	private final static String TEMPLATE = "/panama/tests/hello.vm";
+
+	private VelocityEngine engine;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		Properties props = new Properties();
+		props.load(getClass().getClassLoader().getResourceAsStream("default-fallback-velocity-production.properties"));
+		engine = new VelocityEngine(props);
+	}
+
+	public void testPrecompileAndHits() throws Exception {
+		TemplateCache cache = new TemplateCache(engine, 10, -1);
+		assertEquals(1, cache.precompile(Arrays.asList(TEMPLATE, "/panama/tests/missing.vm")));
+		assertSame(cache.getTemplate(TEMPLATE), cache.getTemplate(TEMPLATE));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getParsedCount());
+		assertEquals(1.0, cache.getHitRate());
+	}
+
+	public void testBounded() throws Exception {
+		TemplateCache cache = new TemplateCache(engine, 0, -1);
+		cache.getTemplate(TEMPLATE);
+		cache.getTemplate(TEMPLATE);
+		assertEquals(0, cache.getSize());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	/**
+	 * The ClasspathResourceLoader does not detect modifications, so the cache must check the file itself.
+	 */
+	public void testModifiedOnClassPath() throws Exception {
+		File dir = Files.createTempDirectory("templates").toFile();
+		File file = new File(dir, "modified.vm");
+		Files.write(file.toPath(), "old".getBytes(StandardCharsets.UTF_8));
+		ClassLoader original = Thread.currentThread().getContextClassLoader();
+		try (URLClassLoader cl = new URLClassLoader(new URL[] {dir.toURI().toURL()}, original)) {
+			Thread.currentThread().setContextClassLoader(cl);
+			TemplateCache cache = new TemplateCache(engine, 10, 1);
+			Template template = cache.getTemplate("/modified.vm");
+			assertEquals("old", render(template));
+			Thread.sleep(1100);
+			assertSame(template, cache.getTemplate("/modified.vm"));
+
+			Files.write(file.toPath(), "new".getBytes(StandardCharsets.UTF_8));
+			file.setLastModified(file.lastModified() + 2000);
+			assertSame(template, cache.getTemplate("/modified.vm"));	// not checked again within interval
+			Thread.sleep(1100);
+			assertEquals("new", render(cache.getTemplate("/modified.vm")));
+			assertEquals(2, cache.getParsedCount());
+		} finally {
+			Thread.currentThread().setContextClassLoader(original);
+			file.delete();
+			dir.delete();
+		}
+	}
+
+	private String render(Template template) {
+		StringWriter writer = new StringWriter();
+		template.merge(new VelocityContext(), writer);
+		return writer.toString();
+	}
+}
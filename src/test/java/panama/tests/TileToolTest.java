@@ -0,0 +1,103 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import panama.core.Context;
+import panama.tools.TileTool;
+
+/**
+ * @author ridcully
+ */
+public class TileToolTest extends ContextTestCase {
+
+	/**
+	 * Renders tiles without controllers: writes the action name,
+	 * the "request" controller writes what it sees of the request, "slow" waits a bit, "blocking" until it is interrupted.
+	 */
+	private static class TestTileTool extends TileTool {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+
+		@Override
+		public void embed(String controllerName, String actionName) throws Exception {
+			Context ctx = Context.getInstance();
+			String text = actionName;
+			if ("request".equals(controllerName)) {
+				text = ctx.getParameter("id")+" "+ctx.getRequest().getHeader("X-Test")+" "+ctx.getRequest().getAttribute("shared")+" "+(ctx.getHttpSession() != null);
+				ctx.getRequest().setAttribute("shared", "tile");
+			} else if ("slow".equals(controllerName)) {
+				Thread.sleep(100);
+			} else if ("blocking".equals(controllerName)) {
+				started.countDown();
+				try {
+					new CountDownLatch(1).await();
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+					throw e;
+				}
+			}
+			ctx.getResponse().getWriter().write(text);
+		}
+	}
+
+	public void testFallback() throws Exception {
+		TileTool tiles = new TileTool();
+		TileTool.Tile tile = tiles.async("missing", "action", null, 1000, "n/a");
+		assertEquals("n/a", tile.toString());
+		assertEquals("n/a", tile.toString());
+		assertSame(context, Context.getInstance());
+		assertEquals("", ((MockResponse)context.getResponse()).getContent());
+	}
+
+	public void testBackgroundTile() throws Exception {
+		MockRequest request = (MockRequest)context.getRequest();
+		request.setHeader("X-Test", "header");
+		request.setAttribute("shared", "parent");
+		TileTool.Tile tile = new TestTileTool().async("request", "view", Collections.singletonMap("id", 42), 1000, "n/a");
+		request.setHeader("X-Test", "changed");		// the tile works on a snapshot of the request
+		assertEquals("42 header parent true", tile.toString());
+		assertEquals("parent", request.getAttribute("shared"));
+		assertSame(context, Context.getInstance());
+		assertEquals("", ((MockResponse)context.getResponse()).getContent());
+	}
+
+	public void testOutputOrder() throws Exception {
+		TestTileTool tiles = new TestTileTool();
+		TileTool.Tile first = tiles.async("slow", "first", null, 1000, "n/a");
+		TileTool.Tile second = tiles.async("fast", "second", null, 1000, "n/a");
+		assertEquals("first second", first+" "+second);	// where referenced, not in the order they are finished
+	}
+
+	public void testTimeout() throws Exception {
+		TestTileTool tiles = new TestTileTool();
+		TileTool.Tile tile = tiles.async("blocking", "view", null, 50, "n/a");
+		assertEquals("n/a", tile.toString());
+		assertTrue(tiles.interrupted.await(1, TimeUnit.SECONDS));
+	}
+
+	public void testCancelledWhenRequestEnds() throws Exception {
+		TestTileTool tiles = new TestTileTool();
+		TileTool.Tile tile = tiles.async("blocking", "view", null, 1000, "n/a");
+		assertTrue(tiles.started.await(1, TimeUnit.SECONDS));
+		context.cancelBackgroundTasks();
+		assertTrue(tiles.interrupted.await(1, TimeUnit.SECONDS));
+		assertEquals("n/a", tile.toString());
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import panama.core.Tracer;
+
+/**
+ * Tests tracing with spans.
+ * @author ridcully
+ */
+public class TracerTest extends TestCase {
+
+	public void testNotSampled() {
+		Tracer tracer = new Tracer(10);
+		Tracer.Span root = tracer.startTrace("request", "/x", 0, 0);
+		assertFalse(root.isRecording());
+		Tracer.Span span = Tracer.span("action", "x");
+		try {
+			assertFalse(span.isRecording());
+			assertSame(root, span);
+		} finally {
+			span.close();
+		}
+		root.close();
+		assertTrue(tracer.getSlowTraces().isEmpty());
+	}
+
+	public void testNestedSpans() throws Exception {
+		Tracer tracer = new Tracer(10);
+		Tracer.Span root = tracer.startTrace("request", "/x", 1, 0);
+		try {
+			assertTrue(root.isRecording());
+			Tracer.Span action = Tracer.span("action", "x");
+			try {
+				Tracer.Span query = Tracer.span("query", "Account");
+				try {
+					assertSame(action, query.getParent());
+					assertSame(query, Tracer.current());
+				} finally {
+					query.close();
+				}
+				assertSame(action, Tracer.current());
+			} finally {
+				action.close();
+			}
+			final Tracer.Span parent = Tracer.current();
+			Thread t = new Thread(() -> {
+				Tracer.Span tile = Tracer.span(parent, "tile", "ctrl/action");
+				try {
+					Tracer.span("template", "tile.vm").close();
+				} finally {
+					tile.close();
+				}
+			});
+			t.start();
+			t.join();
+			Tracer.Span render = Tracer.span("render", null);
+			try {
+				Tracer.span("template", "page.vm").close();
+			} finally {
+				render.close();
+			}
+		} finally {
+			root.close();
+		}
+		assertFalse(Tracer.current().isRecording());
+
+		List<Tracer.Span> traces = tracer.getSlowTraces();
+		assertEquals(1, traces.size());
+		List<Tracer.Span> children = traces.get(0).getChildren();
+		assertEquals(3, children.size());
+		assertEquals("action", children.get(0).getName());
+		assertEquals("query", children.get(0).getChildren().get(0).getName());
+		assertEquals("tile", children.get(1).getName());
+		assertEquals("template", children.get(1).getChildren().get(0).getName());
+		assertEquals("render", children.get(2).getName());
+		assertEquals("request", tracer.toJSON().getJSONObject(0).getString("name"));
+	}
+
+	/**
+	 * Async requests are rendered and finished by another thread.
+	 */
+	public void testDetached() throws Exception {
+		Tracer tracer = new Tracer(10);
+		final Tracer.Span root = tracer.startTrace("request", "/x", 1, 0);
+		root.detach();
+		assertFalse(Tracer.current().isRecording());
+		assertTrue(tracer.getSlowTraces().isEmpty());
+		Thread t = new Thread(() -> {
+			Tracer.Span render = Tracer.span(root, "render", null);
+			try {
+				Tracer.span("template", "page.vm").close();
+			} finally {
+				render.close();
+			}
+			root.close();
+		});
+		t.start();
+		t.join();
+		root.close();
+		assertFalse(Tracer.current().isRecording());
+
+		List<Tracer.Span> traces = tracer.getSlowTraces();
+		assertEquals(1, traces.size());
+		assertEquals("render", traces.get(0).getChildren().get(0).getName());
+		assertEquals("template", traces.get(0).getChildren().get(0).getChildren().get(0).getName());
+	}
+
+	public void testOnlySlowTracesAreKept() {
+		Tracer tracer = new Tracer(2);
+		tracer.startTrace("request", "/fast", 1, 60000).close();
+		assertTrue(tracer.getSlowTraces().isEmpty());
+		for (int i = 0; i < 5; i++) {
+			tracer.startTrace("request", "/"+i, 1, 0).close();
+		}
+		List<Tracer.Span> traces = tracer.getSlowTraces();
+		assertEquals(2, traces.size());
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests.collections;
+
+import panama.collections.QueryListModel.PageSeek;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests how pages are fetched with keyset paging, the page fetched before is page 3 (names "c" to "f", ids 30 to 33).
+ * @author ridcully
+ */
+public class QueryListModelTest extends TestCase {
+
+	public void testNextPage() {
+		PageSeek s = plan(4, false);
+		assertEquals(PageSeek.NEXT, s.getMode());
+		assertEquals("f", s.getSortValue());
+		assertEquals(33, s.getKeyValue());
+		assertTrue(s.isAscending());
+		assertFalse(s.isInclusive());
+		assertFalse(s.isReversed());
+		assertFalse(plan(4, true).isAscending());
+	}
+
+	public void testSamePage() {
+		PageSeek s = plan(3, false);
+		assertEquals(PageSeek.SAME, s.getMode());
+		assertEquals("c", s.getSortValue());
+		assertEquals(30, s.getKeyValue());
+		assertTrue(s.isAscending());
+		assertTrue(s.isInclusive());
+		assertFalse(s.isReversed());
+	}
+
+	public void testPreviousPage() {
+		PageSeek s = plan(2, false);
+		assertEquals(PageSeek.PREVIOUS, s.getMode());
+		assertEquals("c", s.getSortValue());
+		assertEquals(30, s.getKeyValue());
+		assertFalse(s.isAscending());	// seeks and orders backwards
+		assertFalse(s.isInclusive());
+		assertTrue(s.isReversed());
+		assertTrue(plan(2, true).isAscending());
+	}
+
+	public void testJump() {
+		assertEquals(PageSeek.OFFSET, plan(7, false).getMode());
+		assertFalse(plan(7, false).isSeeking());
+		assertEquals(PageSeek.FIRST, plan(1, false).getMode());
+		assertEquals(PageSeek.OFFSET, PageSeek.plan(4, 0, null, null, null, null, true, false).getMode());	// nothing fetched before
+		assertEquals(PageSeek.OFFSET, PageSeek.plan(4, 3, "c", 30, null, 33, true, false).getMode());		// null sort value
+		assertEquals(PageSeek.NEXT, PageSeek.plan(4, 3, null, 30, null, 33, false, false).getMode());		// not sorted, key only
+	}
+
+	private PageSeek plan(int page, boolean descending) {
+		return PageSeek.plan(page, 3, "c", 30, "f", 33, true, descending);
+	}
+}
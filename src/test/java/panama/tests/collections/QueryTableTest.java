@@ -0,0 +1,66 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests.collections;
+
+import panama.collections.QueryListModel;
+import panama.collections.QueryTable;
+import panama.collections.filters.Filter;
+import panama.collections.filters.PropertyComparator;
+import panama.core.Context;
+import panama.tests.ContextTestCase;
+
+/**
+ * Tests the approximate row count, with a model that only counts how often it is asked.
+ * @author ridcully
+ */
+public class QueryTableTest extends ContextTestCase {
+
+	private static class CountingModel extends QueryListModel {
+		int counted;
+
+		CountingModel() {
+			super(null);
+		}
+
+		@Override
+		public int getEstimatedRowCount() {
+			return -1;
+		}
+
+		@Override
+		public int getRowCount() {
+			return ++counted;
+		}
+	}
+
+	public void testApproximateRowCount() {
+		CountingModel model = new CountingModel();
+		QueryTable table = new QueryTable("q", model).setApproximateRowCount(60);
+		PropertyComparator country = (PropertyComparator)Filter.eq("name", "Italy");
+		table.setFilter("country", country);
+		assertEquals(1, table.getRowCount());
+		Context.destroyInstance();		// the count is also kept for the request, so count the next ones without context
+		assertEquals(1, table.getRowCount());
+		table.setFilter("country", Filter.eq("name", "Italy"));
+		assertEquals(1, table.getRowCount());		// same filter
+		country = (PropertyComparator)table.getFilters().get("country");
+		country.setPattern("Austria");
+		assertEquals(2, table.getRowCount());		// changed in place
+		table.setFilter("country", Filter.eq("name", "Germany"));
+		assertEquals(3, table.getRowCount());
+		assertEquals(3, model.counted);
+	}
+}
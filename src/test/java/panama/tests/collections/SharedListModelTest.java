@@ -0,0 +1,123 @@
+/*
+ *  Copyright 2004-2016 Robert Brandner (robert.brandner@gmail.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package panama.tests.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import panama.collections.DefaultTable;
+import panama.collections.SharedListModel;
+import panama.collections.Table;
+import panama.collections.filters.Filter;
+import panama.collections.filters.PropertyComparator;
+import panama.tests.ContextTestCase;
+
+/**
+ * Tests sharing of rows and views between tables.
+ * @author ridcully
+ */
+public class SharedListModelTest extends ContextTestCase {
+
+	public static class Country {
+		private final String name;
+		private final int population;
+
+		public Country(String name, int population) {
+			this.name = name;
+			this.population = population;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getPopulation() {
+			return population;
+		}
+	}
+
+	private SharedListModel model;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		model = new SharedListModel(Arrays.asList(
+				new Country("Austria", 9), new Country("Germany", 83), new Country("Switzerland", 9), new Country("Italy", 59)));
+	}
+
+	public void testTablesShareViews() {
+		Table a = new DefaultTable("a", model).setSortBy("population", Table.SORT_DESC);
+		Table b = new DefaultTable("b", model).setSortBy("population", Table.SORT_DESC);
+		Table c = new DefaultTable("c", model).setSortBy("name", Table.SORT_ASC);
+		assertEquals("[Germany, Italy, Austria, Switzerland]", names(a.getRows()));
+		assertSame(a.getRows(), b.getRows());
+		assertEquals("[Austria, Germany, Italy, Switzerland]", names(c.getRows()));
+		assertEquals(2, model.getViewCount());
+
+		a.setFilter("search", Filter.stdSearchFilter("a", "name"));
+		b.setFilter("search", Filter.stdSearchFilter("A", "name"));
+		assertEquals("[Germany, Italy, Austria, Switzerland]", names(a.getRows()));
+		assertNotSame(a.getRows(), b.getRows());	// different patterns
+		b.setFilter("search", Filter.stdSearchFilter("a", "name"));
+		assertSame(a.getRows(), b.getRows());
+
+		c.setEntriesPerPage(3);
+		c.setCurrentPage(2);
+		assertEquals("[Switzerland]", names(c.getPageRows()));
+	}
+
+	public void testFilterChangedInPlace() {
+		PropertyComparator country = (PropertyComparator)Filter.eq("name", "Italy");
+		Table a = new DefaultTable("a", model).setFilter("country", country);
+		Table b = new DefaultTable("b", model).setFilter("country", Filter.eq("name", "Italy"));
+		assertEquals("[Italy]", names(a.getRows()));
+		country.setPattern("Austria");
+		assertEquals("[Austria]", names(a.getRows()));
+		assertEquals("[Italy]", names(b.getRows()));
+		assertEquals(2, model.getViewCount());
+	}
+
+	public void testUpdate() {
+		Table a = new DefaultTable("a", model).setSortBy("name", Table.SORT_DESC);
+		List<? extends Object> before = a.getRows();
+		long version = model.getVersion();
+		model.update(rows -> {
+			rows.add(new Country("Liechtenstein", 0));
+			return rows;
+		});
+		assertEquals(version + 1, model.getVersion());
+		assertEquals(0, model.getViewCount());
+		assertEquals(4, before.size());		// snapshots are not changed
+		assertEquals("[Switzerland, Liechtenstein, Italy, Germany, Austria]", names(a.getRows()));
+		try {
+			model.getList().clear();
+			fail("rows must not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		model.setList(new ArrayList<Object>());
+		assertEquals(0, a.getRowCount());
+	}
+
+	private String names(List<? extends Object> rows) {
+		List<String> names = new ArrayList<String>();
+		for (Object row : rows) {
+			names.add(((Country)row).getName());
+		}
+		return names.toString();
+	}
+}